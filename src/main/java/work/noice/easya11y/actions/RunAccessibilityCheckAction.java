@@ -29,8 +29,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
-import info.magnolia.jcr.util.PropertyUtil;
-import javax.jcr.Session;
+import work.noice.easya11y.models.ModuleConfiguration;
+import work.noice.easya11y.services.ConfigurationService;
 
 import com.vaadin.server.ExternalResource;
 import com.vaadin.ui.BrowserFrame;
@@ -46,16 +46,19 @@ public class RunAccessibilityCheckAction extends AbstractAction<ConfiguredAction
     private final ValueContext<Node> valueContext;
     private final AppContext appContext;
     private final DialogBuilder dialogBuilder;
+    private final ConfigurationService configurationService;
     
     @Inject
     public RunAccessibilityCheckAction(ConfiguredActionDefinition definition, 
                                       ValueContext<Node> valueContext,
                                       AppContext appContext,
-                                      DialogBuilder dialogBuilder) {
+                                      DialogBuilder dialogBuilder,
+                                      ConfigurationService configurationService) {
         super(definition);
         this.valueContext = valueContext;
         this.appContext = appContext;
         this.dialogBuilder = dialogBuilder;
+        this.configurationService = configurationService;
     }
 
     @Override
@@ -89,8 +92,9 @@ public class RunAccessibilityCheckAction extends AbstractAction<ConfiguredAction
                            MgnlContext.getContextPath();
             
             // Get WCAG configuration from saved settings
-            String wcagVersion = getWcagVersion();
-            String wcagLevel = getWcagLevel();
+            ModuleConfiguration configuration = configurationService.get();
+            String wcagVersion = configuration.getWcagVersion();
+            String wcagLevel = configuration.getWcagLevel();
             
             Map<String, String> request = new HashMap<>();
             request.put("pagePath", pagePath);
@@ -172,36 +176,4 @@ public class RunAccessibilityCheckAction extends AbstractAction<ConfiguredAction
         Message message = new Message(MessageType.ERROR, "Accessibility Check Error", errorText);
         appContext.sendLocalMessage(message);
     }
-    
-    /**
-     * Get WCAG version from configuration or return default.
-     */
-    private String getWcagVersion() {
-        try {
-            Session session = MgnlContext.getJCRSession("easya11y");
-            if (session.nodeExists("/configuration")) {
-                Node configNode = session.getNode("/configuration");
-                return PropertyUtil.getString(configNode, "wcagVersion", "2.2");
-            }
-        } catch (RepositoryException e) {
-            log.warn("Could not read WCAG version from configuration", e);
-        }
-        return "2.2"; // Default to WCAG 2.2
-    }
-    
-    /**
-     * Get WCAG level from configuration or return default.
-     */
-    private String getWcagLevel() {
-        try {
-            Session session = MgnlContext.getJCRSession("easya11y");
-            if (session.nodeExists("/configuration")) {
-                Node configNode = session.getNode("/configuration");
-                return PropertyUtil.getString(configNode, "wcagLevel", "AA");
-            }
-        } catch (RepositoryException e) {
-            log.warn("Could not read WCAG level from configuration", e);
-        }
-        return "AA"; // Default to AA
-    }
 }
\ No newline at end of file
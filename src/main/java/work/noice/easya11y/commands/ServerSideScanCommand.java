@@ -3,13 +3,13 @@ package work.noice.easya11y.commands;
 import info.magnolia.commands.MgnlCommand;
 import info.magnolia.context.Context;
 import info.magnolia.context.MgnlContext;
-import work.noice.easya11y.services.ServerSideAccessibilityScanner;
-import work.noice.easya11y.endpoints.AccessibilityScanEndpoint;
+import work.noice.easya11y.services.BatchScanService;
+import work.noice.easya11y.services.PathFilter;
+import work.noice.easya11y.services.ScanPlanner;
+import work.noice.easya11y.services.ScanPriority;
+import work.noice.easya11y.services.TemplateUsageIndex;
 import info.magnolia.objectfactory.Components;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
-import javax.inject.Inject;
 import javax.jcr.Node;
 import javax.jcr.Session;
 import java.util.*;
@@ -25,41 +25,56 @@ public class ServerSideScanCommand extends MgnlCommand {
     
     private static final Logger log = LoggerFactory.getLogger(ServerSideScanCommand.class);
     private static final String WEBSITE_WORKSPACE = "website";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-    
-    private AccessibilityScanEndpoint scanEndpoint;
     
     // Command parameters
     private String pagePath;
     private String pagePattern;
+    private String templateId;
+    private boolean includeComponents = true;
     private String wcagLevel = "AA";
     private boolean sendEmail = true;
     private boolean sendDigest = true;
     private int maxPages = 50;
     
-    @Inject
-    public void setScanEndpoint(AccessibilityScanEndpoint scanEndpoint) {
-        this.scanEndpoint = scanEndpoint;
-    }
-    
     @Override
     public boolean execute(Context context) throws Exception {
         log.info("Executing server-side accessibility scan command");
         
-        // Get scan endpoint instance
-        if (scanEndpoint == null) {
-            scanEndpoint = Components.getComponent(AccessibilityScanEndpoint.class);
-        }
-        
         try {
-            ServerSideAccessibilityScanner scanner = Components.getComponent(ServerSideAccessibilityScanner.class);
+            BatchScanService batchScanService = Components.getComponent(BatchScanService.class);
+            ScanPlanner scanPlanner = Components.getComponent(ScanPlanner.class);
+            String runId = UUID.randomUUID().toString();
             
             if (pagePath != null && !pagePath.isEmpty()) {
                 // Single page scan
                 String pageUrl = buildPageUrl(pagePath);
-                JsonNode results = scanner.scanUrl(pageUrl, wcagLevel);
+                Map<String, Object> result = batchScanService.scanPage(pagePath, pageUrl, wcagLevel, null, ScanPriority.SCHEDULED);
                 log.info("Single page scan completed for: {} with {} violations", 
-                        pagePath, results.get("violations").size());
+                        pagePath, result != null ? result.get("violationCount") : "unknown");
+                
+            } else if (templateId != null && !templateId.isEmpty()) {
+                // Rescan pages using a template
+                TemplateUsageIndex templateUsageIndex = Components.getComponent(TemplateUsageIndex.class);
+                templateUsageIndex.ensureLoaded(MgnlContext.getJCRSession(WEBSITE_WORKSPACE));
+                List<String> pagePaths = new ArrayList<>(templateUsageIndex.getPages(templateId, includeComponents));
+                
+                if (pagePaths.isEmpty()) {
+                    log.warn("No pages found using template: {}", templateId);
+                    return false;
+                }
+                
+                if (pagePaths.size() > maxPages) {
+                    log.info("Found {} pages using template {}, limiting to {}", pagePaths.size(), templateId, maxPages);
+                }
+                pagePaths = scanPlanner.prioritize(pagePaths, wcagLevel, maxPages);
+                
+                Map<String, String> urlMap = new LinkedHashMap<>();
+                for (String path : pagePaths) {
+                    urlMap.put(path, buildPageUrl(path));
+                }
+                
+                Map<String, Map<String, Object>> results = batchScanService.scanPages(urlMap, wcagLevel, runId, ScanPriority.SCHEDULED);
+                log.info("Template scan completed for {} of {} pages using {}", results.size(), urlMap.size(), templateId);
                 
             } else if (pagePattern != null && !pagePattern.isEmpty()) {
                 // Batch scan based on pattern
@@ -70,18 +85,18 @@ public class ServerSideScanCommand extends MgnlCommand {
                     return false;
                 }
                 
-                // Limit pages if needed
+                // Limit pages if needed, keeping the pages that need a scan most
                 if (pagePaths.size() > maxPages) {
                     log.info("Found {} pages, limiting to {}", pagePaths.size(), maxPages);
-                    pagePaths = pagePaths.subList(0, maxPages);
                 }
+                pagePaths = scanPlanner.prioritize(pagePaths, wcagLevel, maxPages);
                 
-                Map<String, String> urlMap = new HashMap<>();
+                Map<String, String> urlMap = new LinkedHashMap<>();
                 for (String path : pagePaths) {
                     urlMap.put(path, buildPageUrl(path));
                 }
                 
-                Map<String, JsonNode> results = scanner.scanUrls(urlMap, wcagLevel);
+                Map<String, Map<String, Object>> results = batchScanService.scanPages(urlMap, wcagLevel, runId, ScanPriority.SCHEDULED);
                 log.info("Batch scan completed for {} pages", results.size());
                 
             } else {
@@ -95,15 +110,15 @@ public class ServerSideScanCommand extends MgnlCommand {
                 
                 if (allPages.size() > maxPages) {
                     log.info("Found {} pages, limiting to {}", allPages.size(), maxPages);
-                    allPages = allPages.subList(0, maxPages);
                 }
+                allPages = scanPlanner.prioritize(allPages, wcagLevel, maxPages);
                 
-                Map<String, String> urlMap = new HashMap<>();
+                Map<String, String> urlMap = new LinkedHashMap<>();
                 for (String path : allPages) {
                     urlMap.put(path, buildPageUrl(path));
                 }
                 
-                Map<String, JsonNode> results = scanner.scanUrls(urlMap, wcagLevel);
+                Map<String, Map<String, Object>> results = batchScanService.scanPages(urlMap, wcagLevel, runId, ScanPriority.SCHEDULED);
                 log.info("Batch scan completed for {} pages", results.size());
             }
             
@@ -127,53 +142,24 @@ public class ServerSideScanCommand extends MgnlCommand {
         }
     }
     
+    /**
+     * Find pages matching a path or glob, see {@link PathFilter}.
+     * A pattern without a leading slash matches page names at any depth.
+     */
     private List<String> findPagesByPattern(String pattern) throws Exception {
-        List<String> pages = new ArrayList<>();
-        Session session = MgnlContext.getJCRSession(WEBSITE_WORKSPACE);
-        
-        // Convert simple pattern to JCR query
-        String query = "SELECT * FROM [mgnl:page] WHERE ISDESCENDANTNODE('/') ";
-        
-        if (pattern.contains("*")) {
-            // Simple wildcard support
-            String likePattern = pattern.replace("*", "%");
-            query += "AND NAME() LIKE '" + likePattern + "'";
-        } else {
-            // Exact path or path prefix
-            query += "AND (LOCALNAME() = '" + pattern + "' OR ISDESCENDANTNODE('" + pattern + "'))";
-        }
-        
-        javax.jcr.query.Query jcrQuery = session.getWorkspace().getQueryManager()
-            .createQuery(query, javax.jcr.query.Query.JCR_SQL2);
-        
-        javax.jcr.query.QueryResult result = jcrQuery.execute();
-        javax.jcr.NodeIterator nodes = result.getNodes();
-        
-        while (nodes.hasNext()) {
-            Node node = nodes.nextNode();
-            pages.add(node.getPath());
-        }
-        
-        return pages;
+        return findPages(PathFilter.compile(Collections.singletonList(pattern), Collections.<String>emptyList()));
     }
     
     protected List<String> findAllPages() throws Exception {
+        return findPages(PathFilter.compile(Collections.<String>emptyList(), Collections.<String>emptyList()));
+    }
+    
+    private List<String> findPages(PathFilter filter) throws Exception {
         List<String> pages = new ArrayList<>();
         Session session = MgnlContext.getJCRSession(WEBSITE_WORKSPACE);
-        
-        // Find all pages
-        String query = "SELECT * FROM [mgnl:page] WHERE ISDESCENDANTNODE('/')";
-        javax.jcr.query.Query jcrQuery = session.getWorkspace().getQueryManager()
-            .createQuery(query, javax.jcr.query.Query.JCR_SQL2);
-        
-        javax.jcr.query.QueryResult result = jcrQuery.execute();
-        javax.jcr.NodeIterator nodes = result.getNodes();
-        
-        while (nodes.hasNext()) {
-            Node node = nodes.nextNode();
+        for (Node node : filter.findPages(session)) {
             pages.add(node.getPath());
         }
-        
         return pages;
     }
     
@@ -194,6 +180,22 @@ public class ServerSideScanCommand extends MgnlCommand {
         this.pagePattern = pagePattern;
     }
     
+    public String getTemplateId() {
+        return templateId;
+    }
+    
+    public void setTemplateId(String templateId) {
+        this.templateId = templateId;
+    }
+    
+    public boolean isIncludeComponents() {
+        return includeComponents;
+    }
+    
+    public void setIncludeComponents(boolean includeComponents) {
+        this.includeComponents = includeComponents;
+    }
+    
     public String getWcagLevel() {
         return wcagLevel;
     }
@@ -7,13 +7,10 @@ import info.magnolia.jcr.util.NodeTypes;
 import info.magnolia.jcr.util.NodeUtil;
 import info.magnolia.jcr.util.PropertyUtil;
 import info.magnolia.rendering.template.AreaDefinition;
-import info.magnolia.rendering.template.TemplateDefinition;
-import info.magnolia.rendering.template.registry.TemplateDefinitionRegistry;
-import info.magnolia.registry.RegistrationException;
 import info.magnolia.templating.functions.TemplatingFunctions;
+import work.noice.easya11y.services.TemplateMetadataCache;
 
 import javax.inject.Inject;
-import javax.inject.Provider;
 import javax.inject.Singleton;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -31,16 +28,16 @@ import java.util.List;
 public class easya11yFunctions {
 
     private final TemplatingFunctions templatingFunctions;
-    private final Provider<TemplateDefinitionRegistry> templateDefinitionRegistryProvider;
+    private final TemplateMetadataCache templateMetadataCache;
 
     /**
      * Constructor.
      */
     @Inject
     public easya11yFunctions(TemplatingFunctions templatingFunctions,
-            Provider<TemplateDefinitionRegistry> templateDefinitionRegistryProvider) {
+            TemplateMetadataCache templateMetadataCache) {
         this.templatingFunctions = templatingFunctions;
-        this.templateDefinitionRegistryProvider = templateDefinitionRegistryProvider;
+        this.templateMetadataCache = templateMetadataCache;
     }
 
     /**
@@ -71,17 +68,9 @@ public class easya11yFunctions {
             return null;
         }
 
-        TemplateDefinition templateDefinition;
-        try {
-            templateDefinition = templateDefinitionRegistryProvider.get()
-                    .getTemplateDefinition(templateId);
-        } catch (RegistrationException e) {
-            // Log error
-            return null;
-        }
-        if (templateDefinition != null && templateDefinition.getAreas() != null
-                && templateDefinition.getAreas().containsKey("main")) {
-            return templateDefinition.getAreas().get("main");
+        TemplateMetadataCache.TemplateMetadata template = templateMetadataCache.get(templateId);
+        if (template != null) {
+            return template.getAreas().get("main");
         }
         return null;
     }
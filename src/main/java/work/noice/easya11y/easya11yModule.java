@@ -2,8 +2,15 @@ package work.noice.easya11y;
 
 import info.magnolia.module.ModuleLifecycle;
 import info.magnolia.module.ModuleLifecycleContext;
+import info.magnolia.objectfactory.Components;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import work.noice.easya11y.services.BatchScanService;
+import work.noice.easya11y.services.ConfigurationService;
+import work.noice.easya11y.services.ScanResultIndex;
+import work.noice.easya11y.services.ScanSessionRegistry;
+import work.noice.easya11y.services.TemplateUsageIndex;
+import work.noice.easya11y.services.WorkspaceChangeTracker;
 
 /**
  * Main module class for the easya11y module.
@@ -15,10 +22,20 @@ public class easya11yModule implements ModuleLifecycle {
     @Override
     public void start(ModuleLifecycleContext moduleLifecycleContext) {
         log.info("Starting easya11y module");
+        Components.getComponent(ConfigurationService.class).start();
+        Components.getComponent(ScanResultIndex.class).start();
+        Components.getComponent(WorkspaceChangeTracker.class).start();
+        Components.getComponent(TemplateUsageIndex.class).start();
     }
     
     @Override
     public void stop(ModuleLifecycleContext moduleLifecycleContext) {
         log.info("Stopping easya11y module");
+        Components.getComponent(ScanResultIndex.class).stop();
+        Components.getComponent(WorkspaceChangeTracker.class).stop();
+        Components.getComponent(TemplateUsageIndex.class).stop();
+        Components.getComponent(BatchScanService.class).stop();
+        Components.getComponent(ScanSessionRegistry.class).clear();
+        Components.getComponent(ConfigurationService.class).stop();
     }
 }
@@ -1,13 +1,19 @@
 package work.noice.easya11y.endpoints;
 
 import info.magnolia.context.MgnlContext;
-import info.magnolia.jcr.util.NodeUtil;
 import info.magnolia.jcr.util.PropertyUtil;
 import info.magnolia.rest.AbstractEndpoint;
 import info.magnolia.rest.EndpointDefinition;
-import work.noice.easya11y.models.AccessibilityScanResult;
-import work.noice.easya11y.services.ServerSideAccessibilityScanner;
-import info.magnolia.objectfactory.Components;
+import work.noice.easya11y.models.ScanResultSummary;
+import work.noice.easya11y.services.BatchScanService;
+import work.noice.easya11y.services.ScanAdmissionController;
+import work.noice.easya11y.services.ScanCoordinator;
+import work.noice.easya11y.services.ScanPlanner;
+import work.noice.easya11y.services.ScanPriority;
+import work.noice.easya11y.services.ScanRejectedException;
+import work.noice.easya11y.services.ScanResultStore;
+import work.noice.easya11y.services.ScanSessionRegistry;
+import work.noice.easya11y.services.TemplateUsageIndex;
 
 import javax.inject.Inject;
 import javax.jcr.Node;
@@ -18,13 +24,13 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.NavigableSet;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -39,15 +45,29 @@ public class AccessibilityScanEndpoint extends AbstractEndpoint<EndpointDefiniti
 
     private static final Logger log = LoggerFactory.getLogger(AccessibilityScanEndpoint.class);
     private static final String WEBSITE_WORKSPACE = "website";
-    private static final String SCAN_RESULTS_WORKSPACE = "easya11y";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int TOO_MANY_REQUESTS = 429;
     
-    // Temporary storage for scan parameters
-    private static final Map<String, String> scanWcagLevels = new HashMap<>();
+    private final ScanResultStore scanResultStore;
+    private final TemplateUsageIndex templateUsageIndex;
+    private final BatchScanService batchScanService;
+    private final ScanSessionRegistry sessionRegistry;
+    private final ScanCoordinator scanCoordinator;
+    private final ScanAdmissionController admissionController;
+    private final ScanPlanner scanPlanner;
     
     @Inject
-    public AccessibilityScanEndpoint(EndpointDefinition definition) {
+    public AccessibilityScanEndpoint(EndpointDefinition definition, ScanResultStore scanResultStore,
+                                     TemplateUsageIndex templateUsageIndex, BatchScanService batchScanService,
+                                     ScanSessionRegistry sessionRegistry, ScanCoordinator scanCoordinator,
+                                     ScanAdmissionController admissionController, ScanPlanner scanPlanner) {
         super(definition);
+        this.scanResultStore = scanResultStore;
+        this.templateUsageIndex = templateUsageIndex;
+        this.batchScanService = batchScanService;
+        this.sessionRegistry = sessionRegistry;
+        this.scanCoordinator = scanCoordinator;
+        this.admissionController = admissionController;
+        this.scanPlanner = scanPlanner;
     }
 
     /**
@@ -73,11 +93,9 @@ public class AccessibilityScanEndpoint extends AbstractEndpoint<EndpointDefiniti
         }
         
         try {
-            // Generate scan ID
-            String scanId = UUID.randomUUID().toString();
-            
-            // Store WCAG level for this scan
-            scanWcagLevels.put(scanId, wcagLevel);
+            // Register the scan, its WCAG level is used if the results do not carry one
+            String initiator = MgnlContext.getUser() != null ? MgnlContext.getUser().getName() : null;
+            String scanId = sessionRegistry.register(pagePath, wcagLevel, initiator).getScanId();
             
             // Build page URL directly - let the rendered page handle whether it exists
             String contextPath = MgnlContext.getContextPath();
@@ -127,137 +145,9 @@ public class AccessibilityScanEndpoint extends AbstractEndpoint<EndpointDefiniti
     @Produces(MediaType.APPLICATION_JSON)
     public Response storeScanResults(JsonNode scanResults) {
         try {
-            // Extract basic information
-            String scanId = scanResults.get("scanId").asText();
-            String pagePath = scanResults.get("pagePath").asText();
-            String pageUrl = scanResults.get("pageUrl").asText();
-            String pageTitle = scanResults.get("pageTitle").asText();
-            
-            // Get WCAG level from request or use stored value from scan initiation
-            String wcagLevel = scanResults.has("wcagLevel") ? 
-                scanResults.get("wcagLevel").asText() : 
-                scanWcagLevels.getOrDefault(scanId, "AA");
-            
-            // Get score from frontend (required)
-            if (!scanResults.has("score")) {
-                return buildErrorResponse("Score is required from frontend calculation", Response.Status.BAD_REQUEST);
-            }
-            Double frontendScore = scanResults.get("score").asDouble();
-            
-            // Validate score range
-            if (frontendScore < 0 || frontendScore > 100) {
-                return buildErrorResponse("Score must be between 0 and 100", Response.Status.BAD_REQUEST);
-            }
-            
-            // Clean up temporary storage
-            scanWcagLevels.remove(scanId);
-            
-            // Get axe results
-            JsonNode axeResults = scanResults.get("axeResults");
-            if (axeResults == null) {
-                return buildErrorResponse("No axe results provided", Response.Status.BAD_REQUEST);
-            }
-            
-            // Create scan result model
-            AccessibilityScanResult result = new AccessibilityScanResult(pagePath, pageUrl);
-            result.setId(scanId);
-            result.setPageTitle(pageTitle);
-            result.setWcagLevel(wcagLevel);
-            // Get scanner version safely
-            String scannerVersion = "unknown";
-            if (axeResults.has("testEngine")) {
-                JsonNode testEngine = axeResults.get("testEngine");
-                if (testEngine != null && testEngine.has("version")) {
-                    scannerVersion = "axe-" + testEngine.get("version").asText("unknown");
-                }
-            } else if (axeResults.has("toolOptions")) {
-                JsonNode toolOptions = axeResults.get("toolOptions");
-                if (toolOptions != null && toolOptions.has("version")) {
-                    scannerVersion = toolOptions.get("version").asText("unknown");
-                }
-            }
-            result.setScannerVersion(scannerVersion);
-            
-            // Process violations
-            JsonNode violations = axeResults.get("violations");
-            if (violations != null && violations.isArray()) {
-                processScanItems(violations, result.getViolations(), AccessibilityScanResult.Violation.class, result);
-            }
-            
-            // Process passes
-            JsonNode passes = axeResults.get("passes");
-            if (passes != null && passes.isArray()) {
-                List<AccessibilityScanResult.Pass> passList = new ArrayList<>();
-                int totalPassElements = 0;
-                for (JsonNode pass : passes) {
-                    AccessibilityScanResult.Pass p = new AccessibilityScanResult.Pass();
-                    p.setId(pass.get("id").asText());
-                    p.setDescription(pass.get("description").asText());
-                    p.setHelp(pass.get("help").asText());
-                    int nodeCount = pass.get("nodes").size();
-                    p.setNodeCount(nodeCount);
-                    totalPassElements += nodeCount;
-                    passList.add(p);
-                }
-                result.setPasses(passList);
-                
-                // Calculate total elements (elements that passed + elements with issues)
-                result.setTotalElements(totalPassElements + result.getElementsWithIssues());
-            }
-            
-            // Set the frontend-calculated score
-            result.setScore(frontendScore);
-            
-            // Store in JCR
-            Session scanSession = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
-            String scanResultPath = "/scanResults" + pagePath;
-            
-            // Create parent nodes if needed
-            ensureParentNodes(scanSession, scanResultPath);
-            
-            // Create or update scan result node
-            Node scanNode;
-            if (scanSession.nodeExists(scanResultPath)) {
-                scanNode = scanSession.getNode(scanResultPath);
-            } else {
-                Node parentNode = scanSession.getNode(scanResultPath.substring(0, scanResultPath.lastIndexOf('/')));
-                scanNode = parentNode.addNode(scanResultPath.substring(scanResultPath.lastIndexOf('/') + 1), "mgnl:content");
-            }
-            
-            // Store scan data
-            scanNode.setProperty("scanId", scanId);
-            scanNode.setProperty("pageUrl", pageUrl);
-            scanNode.setProperty("pageTitle", pageTitle);
-            scanNode.setProperty("scanDate", new Date().getTime());
-            scanNode.setProperty("wcagLevel", wcagLevel);
-            scanNode.setProperty("score", result.getScore());
-            scanNode.setProperty("violationCount", result.getViolations().size());
-            scanNode.setProperty("passCount", result.getPasses().size());
-            scanNode.setProperty("totalElements", result.getTotalElements());
-            scanNode.setProperty("elementsWithIssues", result.getElementsWithIssues());
-            
-            // Store violations summary
-            for (Map.Entry<String, Integer> entry : result.getViolationsByImpact().entrySet()) {
-                scanNode.setProperty("violations_" + entry.getKey(), entry.getValue());
-            }
-            
-            // Store detailed results as JSON
-            scanNode.setProperty("fullResults", objectMapper.writeValueAsString(result));
-            
-            scanSession.save();
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("scanId", scanId);
-            response.put("score", result.getScore());
-            response.put("violationCount", result.getViolations().size());
-            response.put("passCount", result.getPasses().size());
-            response.put("totalElements", result.getTotalElements());
-            response.put("elementsWithIssues", result.getElementsWithIssues());
-            response.put("message", "Scan results stored successfully");
-            
-            return Response.ok(response).build();
-            
+            return Response.ok(scanResultStore.store(scanResults)).build();
+        } catch (IllegalArgumentException e) {
+            return buildErrorResponse(e.getMessage(), Response.Status.BAD_REQUEST);
         } catch (Exception e) {
             log.error("Error storing scan results", e);
             return buildErrorResponse("Error storing scan results: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
@@ -265,90 +155,70 @@ public class AccessibilityScanEndpoint extends AbstractEndpoint<EndpointDefiniti
     }
     
     /**
-     * Process scan items (violations, incomplete, etc.)
+     * Get the scans initiated in the browser whose results have not been stored yet.
+     *
+     * @return Response with the active scan sessions, oldest first, and registry counters
      */
-    private <T> void processScanItems(JsonNode items, List<T> targetList, Class<T> itemClass, AccessibilityScanResult result) {
-        if (!items.isArray()) return;
-        
-        for (JsonNode item : items) {
-            try {
-                if (itemClass == AccessibilityScanResult.Violation.class) {
-                    AccessibilityScanResult.Violation violation = new AccessibilityScanResult.Violation();
-                    violation.setId(item.has("id") ? item.get("id").asText() : "");
-                    violation.setImpact(item.has("impact") ? item.get("impact").asText() : "");
-                    violation.setDescription(item.has("description") ? item.get("description").asText() : "");
-                    violation.setHelp(item.has("help") ? item.get("help").asText() : "");
-                    violation.setHelpUrl(item.has("helpUrl") ? item.get("helpUrl").asText() : "");
-                    
-                    // Process tags
-                    JsonNode tags = item.get("tags");
-                    if (tags != null && tags.isArray()) {
-                        List<String> tagList = new ArrayList<>();
-                        for (JsonNode tag : tags) {
-                            tagList.add(tag.asText());
-                            // Update WCAG level counts
-                            if (tag.asText().matches("wcag2?a{1,3}")) {
-                                String level = tag.asText().toUpperCase().replaceAll("WCAG2?", "");
-                                result.getViolationsByWcagLevel().merge(level, 1, Integer::sum);
-                            }
-                        }
-                        violation.setTags(tagList);
-                    }
-                    
-                    // Process nodes
-                    JsonNode nodes = item.get("nodes");
-                    if (nodes != null && nodes.isArray()) {
-                        List<AccessibilityScanResult.Node> nodeList = new ArrayList<>();
-                        for (JsonNode node : nodes) {
-                            AccessibilityScanResult.Node n = new AccessibilityScanResult.Node();
-                            
-                            // Handle target array
-                            JsonNode targetArray = node.get("target");
-                            if (targetArray != null && targetArray.isArray() && targetArray.size() > 0) {
-                                n.setTarget(targetArray.get(0).asText());
-                            }
-                            
-                            n.setHtml(node.get("html").asText(""));
-                            n.setFailureSummary(node.get("failureSummary").asText(""));
-                            n.setImpact(node.get("impact").asText(""));
-                            
-                            nodeList.add(n);
-                        }
-                        violation.setNodes(nodeList);
-                        result.setElementsWithIssues(result.getElementsWithIssues() + nodeList.size());
-                    }
-                    
-                    // Update impact counts
-                    result.getViolationsByImpact().merge(violation.getImpact(), 1, Integer::sum);
-                    
-                    targetList.add((T) violation);
-                }
-            } catch (Exception e) {
-                log.warn("Error processing scan item", e);
-            }
+    @GET
+    @Path("/sessions")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getScanSessions() {
+        List<Map<String, Object>> sessions = new ArrayList<>();
+        for (ScanSessionRegistry.ScanSession session : sessionRegistry.getActive()) {
+            sessions.add(session.toMap());
         }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("sessions", sessions);
+        response.put("statistics", sessionRegistry.getStatistics());
+
+        return Response.ok(response).build();
     }
-    
+
     /**
-     * Ensure parent nodes exist for a given path.
+     * Get the state of a scan initiated in the browser.
+     *
+     * @param scanId The scan id returned by /initiate
+     * @return Response with the session if the scan is still running, 404 if it completed or expired
      */
-    private void ensureParentNodes(Session session, String path) throws RepositoryException {
-        String[] parts = path.split("/");
-        String currentPath = "";
-        
-        for (int i = 1; i < parts.length - 1; i++) {
-            currentPath += "/" + parts[i];
-            if (!session.nodeExists(currentPath)) {
-                Node parentNode = session.getNode(currentPath.substring(0, currentPath.lastIndexOf('/')));
-                parentNode.addNode(parts[i], "mgnl:folder");
-            }
+    @GET
+    @Path("/sessions/{scanId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getScanSession(@PathParam("scanId") String scanId) {
+        ScanSessionRegistry.ScanSession session = sessionRegistry.get(scanId);
+        if (session == null) {
+            return buildErrorResponse("No running scan: " + scanId, Response.Status.NOT_FOUND);
         }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("session", session.toMap());
+
+        return Response.ok(response).build();
     }
-    
+
+    /**
+     * Get the load of the server-side scanner: running and queued scans and the configured limits.
+     *
+     * @return Response with the scan queue statistics
+     */
+    @GET
+    @Path("/queue")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getScanQueue() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("queue", admissionController.getStatistics());
+
+        return Response.ok(response).build();
+    }
+
     /**
      * Server-side scan for a specific page.
      *
-     * @param request Request with pagePath, wcagLevel, and sendEmail parameters
+     * @param request Request with pagePath, wcagLevel, sendEmail and force parameters,
+     *                force to scan even if the stored result of the page is still fresh
      * @return Response with scan results
      */
     @POST
@@ -358,6 +228,7 @@ public class AccessibilityScanEndpoint extends AbstractEndpoint<EndpointDefiniti
     public Response serverSideScan(Map<String, String> request) {
         String pagePath = request.get("pagePath");
         String wcagLevel = request.get("wcagLevel");
+        boolean force = Boolean.parseBoolean(request.get("force"));
         
         if (pagePath == null || pagePath.isEmpty()) {
             return buildErrorResponse("Page path is required", Response.Status.BAD_REQUEST);
@@ -368,9 +239,6 @@ public class AccessibilityScanEndpoint extends AbstractEndpoint<EndpointDefiniti
         }
         
         try {
-            // Get scanner instance
-            ServerSideAccessibilityScanner scanner = Components.getComponent(ServerSideAccessibilityScanner.class);
-            
             // Build page URL with bypass authentication (similar to preview mode)
             String scheme = MgnlContext.getWebContext().getRequest().getScheme();
             String serverName = MgnlContext.getWebContext().getRequest().getServerName();
@@ -383,49 +251,60 @@ public class AccessibilityScanEndpoint extends AbstractEndpoint<EndpointDefiniti
             
             log.info("Using regular page URL (authentication handled by Selenium): {}", pageUrl);
             
-            // Run server-side scan
-            log.info("Starting server-side scan for: {}", pageUrl);
-            JsonNode axeResults = scanner.scanUrl(pageUrl, wcagLevel);
-            
-            // Calculate score
-            double score = calculateScore(axeResults);
-            
-            // Get page title
-            String pageTitle = pagePath.substring(pagePath.lastIndexOf('/') + 1);
-            try {
-                Session websiteSession = MgnlContext.getJCRSession(WEBSITE_WORKSPACE);
-                if (websiteSession.nodeExists(pagePath)) {
-                    Node pageNode = websiteSession.getNode(pagePath);
-                    pageTitle = PropertyUtil.getString(pageNode, "title", pageTitle);
+            // Answer from the stored result while the page is unchanged, unless a new scan is forced
+            if (!force) {
+                ScanResultSummary fresh = scanCoordinator.findFreshResult(pagePath, wcagLevel);
+                if (fresh != null) {
+                    log.info("Page {} unchanged since its scan at {}, returning stored result", pagePath, new Date(fresh.getScanDate()));
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", true);
+                    response.put("scanId", fresh.getScanId());
+                    response.put("score", fresh.getScore());
+                    response.put("violationCount", fresh.getViolationCount());
+                    response.put("pageUrl", pageUrl);
+                    response.put("scanDate", fresh.getScanDate());
+                    response.put("cached", true);
+                    response.put("message", "Page unchanged since its last scan, returning stored result");
+                    
+                    return Response.ok(response).build();
                 }
-            } catch (Exception e) {
-                log.warn("Could not get page title for: {}", pagePath);
             }
             
-            // Prepare and store scan results
-            Map<String, Object> scanData = new HashMap<>();
-            scanData.put("scanId", UUID.randomUUID().toString());
-            scanData.put("pagePath", pagePath);
-            scanData.put("pageUrl", pageUrl);
-            scanData.put("pageTitle", pageTitle);
-            scanData.put("wcagLevel", wcagLevel);
-            scanData.put("score", score);
-            scanData.put("axeResults", axeResults);
-            
-            // Store results
-            JsonNode scanResults = objectMapper.valueToTree(scanData);
-            storeScanResults(scanResults);
+            // Run server-side scan and store results, sharing a scan of the same page already in flight
+            log.info("Starting server-side scan for: {}", pageUrl);
+            Map<String, Object> stored = scanCoordinator.scanPage(pagePath, pageUrl, wcagLevel, null, ScanPriority.INTERACTIVE);
+            if (stored == null) {
+                return buildErrorResponse("Scan of page " + pagePath + " failed, no results were stored",
+                    Response.Status.INTERNAL_SERVER_ERROR);
+            }
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("scanId", scanData.get("scanId"));
-            response.put("score", score);
-            response.put("violationCount", axeResults.get("violations").size());
+            response.put("scanId", stored.get("scanId"));
+            response.put("score", stored.get("score"));
+            response.put("violationCount", stored.get("violationCount"));
             response.put("pageUrl", pageUrl);
+            response.put("shared", Boolean.TRUE.equals(stored.get("shared")));
+            response.put("cached", false);
+            response.put("queuePosition", stored.get("queuePosition"));
+            response.put("queuedMillis", stored.get("queuedMillis"));
             response.put("message", "Server-side scan completed successfully");
             
             return Response.ok(response).build();
             
+        } catch (ScanRejectedException e) {
+            log.info("Rejected server-side scan of {}: {}", pagePath, e.getMessage());
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            result.put("retryAfter", e.getRetryAfterSeconds());
+            result.put("queueLength", e.getQueueLength());
+            
+            return Response.status(TOO_MANY_REQUESTS)
+                    .header("Retry-After", e.getRetryAfterSeconds())
+                    .entity(result)
+                    .build();
+            
         } catch (Exception e) {
             log.error("Error during server-side scan", e);
             return buildErrorResponse("Error during scan: " + e.getMessage(), 
@@ -433,50 +312,100 @@ public class AccessibilityScanEndpoint extends AbstractEndpoint<EndpointDefiniti
         }
     }
     
-    private double calculateScore(JsonNode axeResults) {
-        int totalViolations = 0;
-        double weightedViolations = 0.0;
+    /**
+     * List the pages using a template, as page template or through a component.
+     *
+     * @param templateId The template id
+     * @param includeComponents Whether to include pages using the template for a component (default true)
+     * @return Response with the affected page paths
+     */
+    @GET
+    @Path("/template/pages")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getTemplatePages(@QueryParam("templateId") String templateId,
+                                     @QueryParam("includeComponents") @DefaultValue("true") boolean includeComponents) {
+        if (templateId == null || templateId.isEmpty()) {
+            return buildErrorResponse("Template id is required", Response.Status.BAD_REQUEST);
+        }
         
-        if (axeResults.has("violations")) {
-            JsonNode violations = axeResults.get("violations");
-            for (JsonNode violation : violations) {
-                String impact = violation.get("impact").asText();
-                int nodeCount = violation.get("nodes").size();
-                totalViolations += nodeCount;
-                
-                switch (impact) {
-                    case "critical":
-                        weightedViolations += nodeCount * 10;
-                        break;
-                    case "serious":
-                        weightedViolations += nodeCount * 5;
-                        break;
-                    case "moderate":
-                        weightedViolations += nodeCount * 2;
-                        break;
-                    case "minor":
-                        weightedViolations += nodeCount * 1;
-                        break;
-                }
-            }
+        try {
+            templateUsageIndex.ensureLoaded(MgnlContext.getJCRSession(WEBSITE_WORKSPACE));
+            NavigableSet<String> pages = templateUsageIndex.getPages(templateId, includeComponents);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("templateId", templateId);
+            response.put("pageCount", pages.size());
+            response.put("pages", new ArrayList<>(pages));
+            
+            return Response.ok(response).build();
+            
+        } catch (RepositoryException e) {
+            log.error("Error listing pages for template {}", templateId, e);
+            return buildErrorResponse("Error listing pages for template: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
         }
+    }
+    
+    /**
+     * Rescan all pages using a template, e.g. after the template or component was fixed.
+     * The scans run in the background; results are stored as they complete.
+     *
+     * @param request Request with templateId, wcagLevel, includeComponents and maxPages parameters
+     * @return Response with the batch id and the pages that will be scanned
+     */
+    @POST
+    @Path("/template")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response rescanTemplate(Map<String, String> request) {
+        String templateId = request.get("templateId");
+        String wcagLevel = request.get("wcagLevel");
+        boolean includeComponents = !"false".equals(request.get("includeComponents"));
         
-        // Calculate total elements tested
-        int totalElements = 0;
-        if (axeResults.has("passes")) {
-            JsonNode passes = axeResults.get("passes");
-            for (JsonNode pass : passes) {
-                totalElements += pass.get("nodes").size();
-            }
+        if (templateId == null || templateId.isEmpty()) {
+            return buildErrorResponse("Template id is required", Response.Status.BAD_REQUEST);
         }
-        totalElements += totalViolations;
         
-        if (totalElements == 0) {
-            return 100.0;
+        if (wcagLevel == null || wcagLevel.isEmpty()) {
+            wcagLevel = "AA";
         }
         
-        double score = 100.0 - (weightedViolations / totalElements * 100.0);
-        return Math.max(0, Math.min(100, score));
+        try {
+            int maxPages = request.containsKey("maxPages") ? Integer.parseInt(request.get("maxPages")) : 0;
+            
+            templateUsageIndex.ensureLoaded(MgnlContext.getJCRSession(WEBSITE_WORKSPACE));
+            NavigableSet<String> pages = templateUsageIndex.getPages(templateId, includeComponents);
+            if (pages.isEmpty()) {
+                return buildErrorResponse("No pages found using template: " + templateId, Response.Status.NOT_FOUND);
+            }
+            
+            String baseUrl = MgnlContext.getWebContext().getRequest().getScheme() + "://" +
+                           MgnlContext.getWebContext().getRequest().getServerName() + ":" +
+                           MgnlContext.getWebContext().getRequest().getServerPort() +
+                           MgnlContext.getContextPath();
+            Map<String, String> pageUrls = new LinkedHashMap<>();
+            for (String pagePath : scanPlanner.prioritize(pages, wcagLevel, maxPages)) {
+                pageUrls.put(pagePath, baseUrl + pagePath + ".html");
+            }
+            
+            String batchId = batchScanService.submit("template " + templateId, pageUrls, wcagLevel);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("batchId", batchId);
+            response.put("templateId", templateId);
+            response.put("pageCount", pageUrls.size());
+            response.put("pages", new ArrayList<>(pageUrls.keySet()));
+            response.put("message", "Rescan of " + pageUrls.size() + " pages started");
+            
+            return Response.status(Response.Status.ACCEPTED).entity(response).build();
+            
+        } catch (NumberFormatException e) {
+            return buildErrorResponse("Invalid maxPages: " + request.get("maxPages"), Response.Status.BAD_REQUEST);
+        } catch (Exception e) {
+            log.error("Error starting rescan for template {}", templateId, e);
+            return buildErrorResponse("Error starting rescan: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
     }
     
     /**
@@ -2,15 +2,13 @@ package work.noice.easya11y.endpoints;
 
 import info.magnolia.context.MgnlContext;
 import info.magnolia.jcr.util.NodeTypes;
-import info.magnolia.jcr.util.NodeUtil;
 import info.magnolia.jcr.util.PropertyUtil;
 import info.magnolia.rest.AbstractEndpoint;
 import info.magnolia.rest.EndpointDefinition;
+import work.noice.easya11y.services.ConfigurationService;
 
 import javax.inject.Inject;
 import javax.jcr.Node;
-import javax.jcr.Property;
-import javax.jcr.PropertyIterator;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.ws.rs.Consumes;
@@ -28,7 +26,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * REST endpoint for managing easya11y global configuration.
- * Configuration is stored in the easya11y workspace under /configuration node.
+ * Configuration is stored in the easya11y workspace under /configuration node and
+ * read through {@link ConfigurationService}.
  */
 @Path("/easya11y/configuration")
 public class ConfigurationEndpoint extends AbstractEndpoint<EndpointDefinition> {
@@ -37,9 +36,12 @@ public class ConfigurationEndpoint extends AbstractEndpoint<EndpointDefinition>
     private static final String easya11y_WORKSPACE = "easya11y";
     private static final String CONFIG_NODE_PATH = "/configuration";
     
+    private final ConfigurationService configurationService;
+    
     @Inject
-    public ConfigurationEndpoint(EndpointDefinition definition) {
+    public ConfigurationEndpoint(EndpointDefinition definition, ConfigurationService configurationService) {
         super(definition);
+        this.configurationService = configurationService;
     }
 
     /**
@@ -50,38 +52,11 @@ public class ConfigurationEndpoint extends AbstractEndpoint<EndpointDefinition>
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response getConfiguration() {
-        try {
-            Session session = MgnlContext.getJCRSession(easya11y_WORKSPACE);
-            Map<String, Object> result = new HashMap<>();
-            Map<String, String> configuration = new HashMap<>();
-            
-            // Check if configuration node exists
-            if (session.nodeExists(CONFIG_NODE_PATH)) {
-                Node configNode = session.getNode(CONFIG_NODE_PATH);
-                
-                // Read all properties from the configuration node
-                PropertyIterator properties = configNode.getProperties();
-                while (properties.hasNext()) {
-                    Property property = properties.nextProperty();
-                    String propertyName = property.getName();
-                    
-                    // Skip JCR system properties
-                    if (!propertyName.startsWith("jcr:") && !propertyName.startsWith("mgnl:")) {
-                        configuration.put(propertyName, property.getString());
-                    }
-                }
-            }
-            
-            result.put("success", true);
-            result.put("configuration", configuration);
-            
-            return Response.ok(result).build();
-            
-        } catch (RepositoryException e) {
-            log.error("Error retrieving configuration", e);
-            return buildErrorResponse("Error retrieving configuration: " + e.getMessage(), 
-                Response.Status.INTERNAL_SERVER_ERROR);
-        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("configuration", configurationService.get().asMap());
+        
+        return Response.ok(result).build();
     }
     
     /**
@@ -128,11 +103,9 @@ public class ConfigurationEndpoint extends AbstractEndpoint<EndpointDefinition>
                 }
             }
             
-            // Also set system properties for immediate use
-            updateSystemProperties(configuration);
-            
-            // Save changes
+            // Save changes and apply them without waiting for observation
             session.save();
+            configurationService.reload();
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -147,24 +120,6 @@ public class ConfigurationEndpoint extends AbstractEndpoint<EndpointDefinition>
         }
     }
     
-    /**
-     * Update system properties for immediate use without restart.
-     * This allows the configuration to take effect immediately.
-     *
-     * @param configuration The configuration map
-     */
-    private void updateSystemProperties(Map<String, Object> configuration) {
-        // WCAG settings
-        if (configuration.containsKey("wcagVersion")) {
-            System.setProperty("easya11y.wcag.version", 
-                configuration.get("wcagVersion").toString());
-        }
-        if (configuration.containsKey("wcagLevel")) {
-            System.setProperty("easya11y.wcag.level", 
-                configuration.get("wcagLevel").toString());
-        }
-    }
-    
     /**
      * Build an error response.
      *
@@ -0,0 +1,165 @@
+package work.noice.easya11y.endpoints;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming reader for the stored fullResults JSON of a scan.
+ * Reads violations without materializing the nodes of every violation, so the violation list
+ * and single pages of nodes can be served from large results without binding the whole document.
+ */
+class FullResultsReader {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private FullResultsReader() {
+    }
+
+    /**
+     * Read the violations without their nodes, with the number of nodes of each.
+     *
+     * @param fullResults The fullResults JSON
+     * @return Violation summaries in stored order
+     */
+    static List<Map<String, Object>> readViolationSummaries(String fullResults) throws IOException {
+        List<Map<String, Object>> violations = new ArrayList<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(fullResults)) {
+            if (!moveToViolations(parser)) {
+                return violations;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                Map<String, Object> violation = new LinkedHashMap<>();
+                int nodeCount = 0;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("nodes".equals(name) && value == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            parser.skipChildren();
+                            nodeCount++;
+                        }
+                    } else {
+                        violation.put(name, objectMapper.readValue(parser, Object.class));
+                    }
+                }
+                violation.put("nodeCount", nodeCount);
+                violations.add(violation);
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Read one page of the nodes of a violation.
+     *
+     * @param fullResults The fullResults JSON
+     * @param ruleId The rule id of the violation
+     * @param offset Number of nodes to skip
+     * @param limit Maximum number of nodes to return, 0 or less for all
+     * @return The page of nodes, or null if the page has no violation of the rule
+     */
+    static NodePage readViolationNodes(String fullResults, String ruleId, int offset, int limit) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(fullResults)) {
+            if (!moveToViolations(parser)) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String id = null;
+                NodePage page = null;
+                // Nodes seen before the id, kept until the id tells whether they are needed
+                JsonNode bufferedNodes = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("id".equals(name)) {
+                        id = parser.getValueAsString();
+                    } else if ("nodes".equals(name) && value == JsonToken.START_ARRAY) {
+                        if (id == null) {
+                            bufferedNodes = objectMapper.readTree(parser);
+                        } else if (id.equals(ruleId)) {
+                            page = readNodes(parser, offset, limit);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (ruleId.equals(id)) {
+                    if (page == null && bufferedNodes != null) {
+                        page = sliceNodes(bufferedNodes, offset, limit);
+                    }
+                    return page != null ? page : new NodePage(Collections.emptyList(), 0);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static NodePage readNodes(JsonParser parser, int offset, int limit) throws IOException {
+        List<Object> nodes = new ArrayList<>();
+        int total = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (total >= offset && (limit <= 0 || nodes.size() < limit)) {
+                nodes.add(objectMapper.readValue(parser, Object.class));
+            } else {
+                parser.skipChildren();
+            }
+            total++;
+        }
+        return new NodePage(nodes, total);
+    }
+
+    private static NodePage sliceNodes(JsonNode allNodes, int offset, int limit) {
+        List<Object> nodes = new ArrayList<>();
+        for (int i = offset; i < allNodes.size() && (limit <= 0 || nodes.size() < limit); i++) {
+            nodes.add(objectMapper.convertValue(allNodes.get(i), Object.class));
+        }
+        return new NodePage(nodes, allNodes.size());
+    }
+
+    /**
+     * Advance the parser to the start of the top-level violations array.
+     *
+     * @return false if the document has no violations array
+     */
+    private static boolean moveToViolations(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("violations".equals(name) && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * One page of the nodes of a violation.
+     */
+    static class NodePage {
+        private final List<Object> nodes;
+        private final int total;
+
+        NodePage(List<Object> nodes, int total) {
+            this.nodes = nodes;
+            this.total = total;
+        }
+
+        List<Object> getNodes() { return nodes; }
+        int getTotal() { return total; }
+    }
+}
@@ -5,10 +5,12 @@ import info.magnolia.jcr.util.NodeUtil;
 import info.magnolia.jcr.util.PropertyUtil;
 import info.magnolia.rest.AbstractEndpoint;
 import info.magnolia.rest.EndpointDefinition;
-import info.magnolia.config.registry.DefinitionProvider;
-import info.magnolia.config.registry.Registry;
-import info.magnolia.rendering.template.TemplateDefinition;
-import info.magnolia.rendering.template.registry.TemplateDefinitionRegistry;
+import work.noice.easya11y.models.ScanResultSummary;
+import work.noice.easya11y.services.PathFilter;
+import work.noice.easya11y.services.ScanResultIndex;
+import work.noice.easya11y.services.ScanSummaryService;
+import work.noice.easya11y.services.TemplateMetadataCache;
+import work.noice.easya11y.services.WorkspaceChangeTracker;
 
 import javax.inject.Inject;
 import javax.jcr.Node;
@@ -19,9 +21,16 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,27 +48,64 @@ public class PageListEndpoint extends AbstractEndpoint<EndpointDefinition> {
     private static final Logger log = LoggerFactory.getLogger(PageListEndpoint.class);
     private static final String WEBSITE_WORKSPACE = "website";
     private static final String SCAN_RESULTS_WORKSPACE = "easya11y";
+    private static final int MAX_TREE_DEPTH = 5;
     
-    private final TemplateDefinitionRegistry templateRegistry;
+    private final TemplateMetadataCache templateCache;
+    private final WorkspaceChangeTracker changeTracker;
+    private final ScanResultIndex scanIndex;
+    private final ScanSummaryService summaryService;
     
     @Inject
-    public PageListEndpoint(EndpointDefinition definition, TemplateDefinitionRegistry templateRegistry) {
+    public PageListEndpoint(EndpointDefinition definition, TemplateMetadataCache templateCache,
+                            WorkspaceChangeTracker changeTracker, ScanResultIndex scanIndex,
+                            ScanSummaryService summaryService) {
         super(definition);
-        this.templateRegistry = templateRegistry;
+        this.templateCache = templateCache;
+        this.changeTracker = changeTracker;
+        this.scanIndex = scanIndex;
+        this.summaryService = summaryService;
     }
 
     /**
      * Get a list of pages from the website workspace for accessibility scanning.
      *
      * @param path Optional path to filter nodes (defaults to root)
+     * @param exclude Optional comma-separated paths and globs of pages to leave out, see {@link PathFilter}
      * @param includeStatus Whether to include scan status for each page
-     * @return HTTP response with page list
+     * @param fields Comma-separated page fields to return, all fields if omitted
+     * @param format rows (default) or columnar to return the pages as one array per field
+     * @param request The request, used to evaluate If-None-Match and If-Modified-Since
+     * @return HTTP response with page list, or 304 if nothing changed since the client's copy
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response listPages(
             @QueryParam("path") String path,
-            @QueryParam("includeStatus") boolean includeStatus) {
+            @QueryParam("exclude") String exclude,
+            @QueryParam("includeStatus") boolean includeStatus,
+            @QueryParam("fields") String fields,
+            @QueryParam("format") String format,
+            @Context Request request) {
+        RowProjection projection;
+        try {
+            projection = RowProjection.parse(fields, format);
+        } catch (IllegalArgumentException e) {
+            return buildErrorResponse(e.getMessage(), Response.Status.BAD_REQUEST);
+        }
+        
+        // Answer conditional requests before touching the repository
+        String[] workspaces = includeStatus
+            ? new String[]{WEBSITE_WORKSPACE, SCAN_RESULTS_WORKSPACE}
+            : new String[]{WEBSITE_WORKSPACE};
+        EntityTag entityTag = changeTracker.getEntityTag(workspaces);
+        Date lastModified = changeTracker.getLastModified(workspaces);
+        if (entityTag != null) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModified, entityTag);
+            if (notModified != null) {
+                return notModified.cacheControl(revalidate()).build();
+            }
+        }
+        
         try {
             String nodePath = StringUtils.isNotBlank(path) ? path : "/";
             log.info("Listing pages at path: {} with status: {}", nodePath, includeStatus);
@@ -70,8 +116,11 @@ public class PageListEndpoint extends AbstractEndpoint<EndpointDefinition> {
             List<Map<String, Object>> results = new ArrayList<>();
             
             if (websiteSession.nodeExists(nodePath)) {
-                Node rootNode = websiteSession.getNode(nodePath);
-                collectPages(rootNode, results, scanSession);
+                List<String> excludePaths = StringUtils.isNotBlank(exclude)
+                    ? Arrays.asList(StringUtils.split(exclude, ','))
+                    : Collections.<String>emptyList();
+                PathFilter filter = PathFilter.compile(Collections.singletonList(nodePath), excludePaths);
+                collectPages(filter, websiteSession.getNode(nodePath), results, scanSession);
             } else {
                 log.warn("Path not found: {}", nodePath);
                 Map<String, Object> errorInfo = new HashMap<>();
@@ -83,9 +132,14 @@ public class PageListEndpoint extends AbstractEndpoint<EndpointDefinition> {
             result.put("success", true);
             result.put("path", nodePath);
             result.put("totalPages", results.size());
-            result.put("items", results);
+            result.put("format", StringUtils.defaultIfBlank(format, RowProjection.FORMAT_ROWS));
+            result.put("items", projection.apply(results));
             
-            return Response.ok(result).build();
+            return Response.ok(result)
+                    .tag(entityTag)
+                    .lastModified(lastModified)
+                    .cacheControl(revalidate())
+                    .build();
             
         } catch (RepositoryException e) {
             log.error("Error listing pages", e);
@@ -94,117 +148,237 @@ public class PageListEndpoint extends AbstractEndpoint<EndpointDefinition> {
     }
     
     /**
-     * Recursively collect page nodes.
+     * Get the page tree below a path, down to a limited depth.
+     * Every node carries its number of child pages, so clients can expand the tree on demand
+     * by requesting the subtree of a node when it is opened.
      *
-     * @param node The starting node
-     * @param results The list to populate with page data
-     * @param scanSession Optional session to check scan status
-     * @throws RepositoryException if there's an error accessing the repository
+     * @param path Path of the tree root (defaults to root)
+     * @param depth Number of child levels to return (default 1, at most 5)
+     * @param includeStatus Whether to include the scan status of each page and the rollup of its section
+     * @param request The request, used to evaluate If-None-Match and If-Modified-Since
+     * @return HTTP response with the tree, or 304 if nothing changed since the client's copy
      */
-    private void collectPages(Node node, List<Map<String, Object>> results, Session scanSession) throws RepositoryException {
-        // Check if this node is a page
-        if (NodeUtil.isNodeType(node, "mgnl:page")) {
-            Map<String, Object> pageInfo = new HashMap<>();
-            
-            pageInfo.put("name", node.getName());
-            pageInfo.put("path", node.getPath());
-            pageInfo.put("type", node.getPrimaryNodeType().getName());
-            
-            // Get page title
-            if (node.hasProperty("title")) {
-                pageInfo.put("title", PropertyUtil.getString(node, "title"));
-            } else {
-                pageInfo.put("title", node.getName());
+    @GET
+    @Path("/tree")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPageTree(
+            @QueryParam("path") String path,
+            @QueryParam("depth") Integer depth,
+            @QueryParam("includeStatus") boolean includeStatus,
+            @Context Request request) {
+        int treeDepth = depth != null ? Math.max(0, Math.min(depth, MAX_TREE_DEPTH)) : 1;
+        
+        String[] workspaces = includeStatus
+            ? new String[]{WEBSITE_WORKSPACE, SCAN_RESULTS_WORKSPACE}
+            : new String[]{WEBSITE_WORKSPACE};
+        EntityTag entityTag = changeTracker.getEntityTag(workspaces);
+        Date lastModified = changeTracker.getLastModified(workspaces);
+        if (entityTag != null) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModified, entityTag);
+            if (notModified != null) {
+                return notModified.cacheControl(revalidate()).build();
             }
-            
-            // Get template information
-            if (node.hasProperty("mgnl:template")) {
-                String templateId = PropertyUtil.getString(node, "mgnl:template");
-                pageInfo.put("template", templateId);
-                try {
-                    DefinitionProvider<TemplateDefinition> provider = templateRegistry.getProvider(templateId);
-                    if (provider != null && provider.get() != null) {
-                        pageInfo.put("templateTitle", provider.get().getTitle());
-                    }
-                } catch (Registry.NoSuchDefinitionException e) {
-                    log.debug("Template not found: {}", templateId);
-                }
+        }
+        
+        try {
+            String nodePath = StringUtils.isNotBlank(path) ? path : "/";
+            Session websiteSession = MgnlContext.getJCRSession(WEBSITE_WORKSPACE);
+            if (!websiteSession.nodeExists(nodePath)) {
+                return buildErrorResponse("Path not found: " + nodePath, Response.Status.NOT_FOUND);
             }
             
-            // Get modification date
-            if (node.hasProperty("mgnl:lastModified")) {
-                pageInfo.put("lastModified", PropertyUtil.getDate(node, "mgnl:lastModified").getTime());
+            Session scanSession = null;
+            if (includeStatus) {
+                scanSession = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
+                scanIndex.ensureLoaded(scanSession);
+                // Make sure rollups of results stored before they existed are built
+                summaryService.getSummary();
             }
             
-            // Construct page URL
-            String contextPath = MgnlContext.getContextPath();
-            String pagePath = node.getPath();
-            pageInfo.put("url", contextPath + pagePath + ".html");
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("path", nodePath);
+            result.put("depth", treeDepth);
+            result.put("node", buildTreeNode(websiteSession.getNode(nodePath), treeDepth, scanSession));
+            
+            return Response.ok(result)
+                    .tag(entityTag)
+                    .lastModified(lastModified)
+                    .cacheControl(revalidate())
+                    .build();
+            
+        } catch (RepositoryException e) {
+            log.error("Error getting page tree", e);
+            return buildErrorResponse("Error getting page tree: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    /**
+     * Collect the pages matching a filter in navigation order, each page before its child pages.
+     * Only page children are descended into, so areas and components are never read, and scan status
+     * is joined from the in-memory scan result index instead of reading each result node.
+     *
+     * @param filter The filter of the pages, rooted at the starting node
+     * @param root The node to start from
+     * @param results The list to populate with page data
+     * @param scanSession Optional session to join scan status
+     * @throws RepositoryException if there's an error accessing the repository
+     */
+    private void collectPages(PathFilter filter, Node root, List<Map<String, Object>> results,
+                              Session scanSession) throws RepositoryException {
+        if (scanSession != null) {
+            scanIndex.ensureLoaded(scanSession);
+        }
+        
+        addPages(filter, root, results, scanSession != null);
+    }
+    
+    private void addPages(PathFilter filter, Node node, List<Map<String, Object>> results,
+                          boolean includeStatus) throws RepositoryException {
+        if (NodeUtil.isNodeType(node, "mgnl:page") && filter.matches(node.getPath())) {
+            Map<String, Object> pageInfo = toPageInfo(node);
             
-            // Check scan status if requested
-            if (scanSession != null) {
-                pageInfo.put("scanStatus", getScanStatus(node.getPath(), scanSession));
+            // Join scan status if requested
+            if (includeStatus) {
+                pageInfo.put("scanStatus", getScanStatus(node.getPath()));
             }
             
             results.add(pageInfo);
         }
         
-        // Recursively check child nodes
-        NodeIterator children = node.getNodes();
-        while (children.hasNext()) {
-            Node child = children.nextNode();
-            // Skip system nodes and areas
-            if (!child.getName().startsWith("jcr:") && 
-                !child.getName().startsWith("mgnl:") &&
-                !NodeUtil.isNodeType(child, "mgnl:area") &&
-                !NodeUtil.isNodeType(child, "mgnl:component")) {
-                collectPages(child, results, scanSession);
+        // Excluded pages are still descended, a glob exclude leaves out only the page itself
+        NodeIterator childNodes = node.getNodes();
+        while (childNodes.hasNext()) {
+            Node child = childNodes.nextNode();
+            if (NodeUtil.isNodeType(child, "mgnl:page")) {
+                addPages(filter, child, results, includeStatus);
             }
         }
     }
     
     /**
-     * Get scan status for a page.
+     * Build a tree node with its child pages down to the given depth.
+     *
+     * @param node The page, or the root node
+     * @param depth Number of child levels to include
+     * @param scanSession Optional session to read section rollups from
+     * @return Tree node data
+     * @throws RepositoryException if there's an error accessing the repository
+     */
+    private Map<String, Object> buildTreeNode(Node node, int depth, Session scanSession) throws RepositoryException {
+        Map<String, Object> treeNode = NodeUtil.isNodeType(node, "mgnl:page") ? toPageInfo(node) : new HashMap<>();
+        treeNode.put("path", node.getPath());
+        
+        if (scanSession != null) {
+            treeNode.put("scanStatus", getScanStatus(node.getPath()));
+            String scanPath = "/scanResults" + ("/".equals(node.getPath()) ? "" : node.getPath());
+            if (scanSession.nodeExists(scanPath)) {
+                treeNode.put("sectionStatus", summaryService.getRollup(scanSession.getNode(scanPath)));
+            }
+        }
+        
+        // Only direct children are read, so each node costs its number of children
+        List<Map<String, Object>> children = new ArrayList<>();
+        int childCount = 0;
+        NodeIterator childNodes = node.getNodes();
+        while (childNodes.hasNext()) {
+            Node child = childNodes.nextNode();
+            if (!NodeUtil.isNodeType(child, "mgnl:page")) {
+                continue;
+            }
+            childCount++;
+            if (depth > 0) {
+                children.add(buildTreeNode(child, depth - 1, scanSession));
+            }
+        }
+        treeNode.put("childCount", childCount);
+        treeNode.put("hasChildren", childCount > 0);
+        if (depth > 0) {
+            treeNode.put("children", children);
+        }
+        
+        return treeNode;
+    }
+    
+    /**
+     * Build the page data returned for a page node.
+     *
+     * @param node The page node
+     * @return Page data
+     * @throws RepositoryException if there's an error accessing the repository
+     */
+    private Map<String, Object> toPageInfo(Node node) throws RepositoryException {
+        Map<String, Object> pageInfo = new HashMap<>();
+        
+        pageInfo.put("name", node.getName());
+        pageInfo.put("path", node.getPath());
+        pageInfo.put("type", node.getPrimaryNodeType().getName());
+        
+        // Get page title
+        if (node.hasProperty("title")) {
+            pageInfo.put("title", PropertyUtil.getString(node, "title"));
+        } else {
+            pageInfo.put("title", node.getName());
+        }
+        
+        // Get template information
+        if (node.hasProperty("mgnl:template")) {
+            String templateId = PropertyUtil.getString(node, "mgnl:template");
+            pageInfo.put("template", templateId);
+            String templateTitle = templateCache.getTitle(templateId);
+            if (templateTitle != null) {
+                pageInfo.put("templateTitle", templateTitle);
+            }
+        }
+        
+        // Get modification date
+        if (node.hasProperty("mgnl:lastModified")) {
+            pageInfo.put("lastModified", PropertyUtil.getDate(node, "mgnl:lastModified").getTime());
+        }
+        
+        // Construct page URL
+        pageInfo.put("url", MgnlContext.getContextPath() + node.getPath() + ".html");
+        
+        return pageInfo;
+    }
+    
+    /**
+     * Get scan status for a page from the scan result index.
      *
      * @param pagePath The page path
-     * @param scanSession Session for scan results
      * @return Scan status information
      */
-    private Map<String, Object> getScanStatus(String pagePath, Session scanSession) {
+    private Map<String, Object> getScanStatus(String pagePath) {
         Map<String, Object> status = new HashMap<>();
-        status.put("scanned", false);
+        ScanResultSummary summary = scanIndex.get(pagePath);
+        status.put("scanned", summary != null);
         
-        try {
-            // Convert page path to scan result path
-            String scanPath = "/scanResults" + pagePath;
-            
-            if (scanSession.nodeExists(scanPath)) {
-                Node scanNode = scanSession.getNode(scanPath);
-                status.put("scanned", true);
-                
-                if (scanNode.hasProperty("scanDate")) {
-                    status.put("lastScanDate", PropertyUtil.getDate(scanNode, "scanDate").getTime());
-                }
-                
-                if (scanNode.hasProperty("violationCount")) {
-                    status.put("violationCount", PropertyUtil.getLong(scanNode, "violationCount"));
-                }
-                
-                if (scanNode.hasProperty("score")) {
-                    status.put("score", scanNode.getProperty("score").getDouble());
-                }
-                
-                if (scanNode.hasProperty("wcagLevel")) {
-                    status.put("wcagLevel", PropertyUtil.getString(scanNode, "wcagLevel"));
-                }
+        if (summary != null) {
+            if (summary.getScanDate() > 0) {
+                status.put("lastScanDate", summary.getScanDate());
+            }
+            status.put("violationCount", summary.getViolationCount());
+            status.put("score", summary.getScore());
+            if (summary.getWcagLevel() != null) {
+                status.put("wcagLevel", summary.getWcagLevel());
             }
-        } catch (RepositoryException e) {
-            log.debug("Error getting scan status for path: {}", pagePath, e);
         }
         
         return status;
     }
     
+    /**
+     * Cache control that lets clients keep a copy but revalidate it on every use.
+     *
+     * @return The cache control
+     */
+    private CacheControl revalidate() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        cacheControl.setPrivate(true);
+        return cacheControl;
+    }
+    
     /**
      * Build an error response.
      *
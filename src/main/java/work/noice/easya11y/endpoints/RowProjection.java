@@ -0,0 +1,108 @@
+package work.noice.easya11y.endpoints;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Field projection and columnar encoding of list responses.
+ * With fields=a,b only those keys are returned per row. With format=columnar the rows are
+ * returned as one array per column, so keys are not repeated for every row.
+ */
+class RowProjection {
+
+    static final String FORMAT_ROWS = "rows";
+    static final String FORMAT_COLUMNAR = "columnar";
+
+    private final List<String> fields;
+    private final boolean columnar;
+
+    private RowProjection(List<String> fields, boolean columnar) {
+        this.fields = fields;
+        this.columnar = columnar;
+    }
+
+    /**
+     * Parse the projection request parameters.
+     *
+     * @param fields Comma-separated field names, or blank for all fields
+     * @param format rows (default) or columnar
+     * @return The projection
+     * @throws IllegalArgumentException if the format is not supported
+     */
+    static RowProjection parse(String fields, String format) {
+        if (StringUtils.isNotBlank(format) && !FORMAT_ROWS.equals(format) && !FORMAT_COLUMNAR.equals(format)) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+        List<String> fieldList = new ArrayList<>();
+        if (StringUtils.isNotBlank(fields)) {
+            for (String field : fields.split(",")) {
+                if (StringUtils.isNotBlank(field)) {
+                    fieldList.add(field.trim());
+                }
+            }
+        }
+        return new RowProjection(fieldList, FORMAT_COLUMNAR.equals(format));
+    }
+
+    /**
+     * Whether rows are returned unchanged.
+     */
+    boolean isIdentity() {
+        return fields.isEmpty() && !columnar;
+    }
+
+    /**
+     * Apply the projection to a list of rows.
+     *
+     * @param rows The full rows
+     * @return The projected rows, or a map of column name to column values if columnar
+     */
+    Object apply(List<Map<String, Object>> rows) {
+        if (isIdentity()) {
+            return rows;
+        }
+        if (columnar) {
+            return toColumns(rows);
+        }
+
+        List<Map<String, Object>> projected = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Map<String, Object> projectedRow = new LinkedHashMap<>();
+            for (String field : fields) {
+                if (row.containsKey(field)) {
+                    projectedRow.put(field, row.get(field));
+                }
+            }
+            projected.add(projectedRow);
+        }
+        return projected;
+    }
+
+    private Map<String, List<Object>> toColumns(List<Map<String, Object>> rows) {
+        Set<String> columnNames;
+        if (fields.isEmpty()) {
+            columnNames = new LinkedHashSet<>();
+            for (Map<String, Object> row : rows) {
+                columnNames.addAll(row.keySet());
+            }
+        } else {
+            columnNames = new LinkedHashSet<>(fields);
+        }
+
+        Map<String, List<Object>> columns = new LinkedHashMap<>();
+        for (String columnName : columnNames) {
+            List<Object> values = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                values.add(row.get(columnName));
+            }
+            columns.put(columnName, values);
+        }
+        return columns;
+    }
+}
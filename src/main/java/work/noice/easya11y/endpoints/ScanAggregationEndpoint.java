@@ -0,0 +1,179 @@
+package work.noice.easya11y.endpoints;
+
+import info.magnolia.context.MgnlContext;
+import info.magnolia.rest.AbstractEndpoint;
+import info.magnolia.rest.EndpointDefinition;
+import work.noice.easya11y.models.ScanResultSummary;
+import work.noice.easya11y.services.ScanResultIndex;
+
+import javax.inject.Inject;
+import javax.jcr.RepositoryException;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * REST endpoint for site-wide aggregations of scan results.
+ * Answers from counters maintained by the scan result index, without reading full results.
+ */
+@Path("/easya11y/aggregations")
+public class ScanAggregationEndpoint extends AbstractEndpoint<EndpointDefinition> {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanAggregationEndpoint.class);
+    private static final String SCAN_RESULTS_WORKSPACE = "easya11y";
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int DEFAULT_PAGE_LIMIT = 50;
+    
+    private final ScanResultIndex scanIndex;
+    
+    @Inject
+    public ScanAggregationEndpoint(EndpointDefinition definition, ScanResultIndex scanIndex) {
+        super(definition);
+        this.scanIndex = scanIndex;
+    }
+
+    /**
+     * Get violation counts grouped by one facet.
+     *
+     * @param groupBy rule (default), impact, template or path
+     * @param limit Maximum number of groups to return (default 20, 0 for all)
+     * @param depth Number of path segments to group by when grouping by path (default 1)
+     * @return HTTP response with the groups
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response aggregate(
+            @QueryParam("groupBy") String groupBy,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("depth") Integer depth) {
+        String facet = groupBy != null ? groupBy : "rule";
+        int maxGroups = limit != null ? limit : DEFAULT_LIMIT;
+        
+        try {
+            scanIndex.ensureLoaded(MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE));
+            
+            List<Map<String, Object>> groups;
+            switch (facet) {
+                case "rule":
+                    groups = scanIndex.getRuleFacets(maxGroups);
+                    break;
+                case "impact":
+                    groups = scanIndex.getImpactFacets();
+                    break;
+                case "template":
+                    groups = scanIndex.getTemplateFacets(maxGroups);
+                    break;
+                case "path":
+                    groups = scanIndex.getPathFacets(depth != null && depth > 0 ? depth : 1, maxGroups);
+                    break;
+                default:
+                    return buildErrorResponse("Unsupported groupBy: " + facet, Response.Status.BAD_REQUEST);
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("groupBy", facet);
+            response.put("groups", groups);
+            
+            return Response.ok(response).build();
+            
+        } catch (RepositoryException e) {
+            log.error("Error aggregating scan results", e);
+            return buildErrorResponse("Error aggregating scan results: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Get the pages currently violating a rule, ordered by page path.
+     *
+     * @param ruleId The axe rule id, e.g. color-contrast
+     * @param fingerprint Optional fingerprint to only return pages with that specific violating node
+     * @param cursor Cursor returned as nextCursor by the previous call
+     * @param limit Maximum number of pages to return (default 50, 0 for all)
+     * @return HTTP response with the page summaries
+     */
+    @GET
+    @Path("/rules/{ruleId}/pages")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRulePages(
+            @PathParam("ruleId") String ruleId,
+            @QueryParam("fingerprint") String fingerprint,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("limit") Integer limit) {
+        try {
+            scanIndex.ensureLoaded(MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE));
+            
+            ScanResultIndex.ResultPage page = scanIndex.findByRule(ruleId, fingerprint, cursor,
+                    limit != null ? limit : DEFAULT_PAGE_LIMIT);
+            
+            List<Map<String, Object>> pages = new ArrayList<>();
+            for (ScanResultSummary summary : page.getItems()) {
+                pages.add(summary.toMap());
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("ruleId", ruleId);
+            response.put("totalPages", page.getTotal());
+            response.put("nextCursor", page.getNextCursor());
+            response.put("pages", pages);
+            
+            return Response.ok(response).build();
+            
+        } catch (IllegalArgumentException e) {
+            return buildErrorResponse(e.getMessage(), Response.Status.BAD_REQUEST);
+        } catch (RepositoryException e) {
+            log.error("Error finding pages for rule {}", ruleId, e);
+            return buildErrorResponse("Error finding pages for rule: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Get the violation fingerprints of a rule with the number of pages each occurs on.
+     *
+     * @param ruleId The axe rule id
+     * @param limit Maximum number of fingerprints to return (default 20, 0 for all)
+     * @return HTTP response with the fingerprints, most widespread first
+     */
+    @GET
+    @Path("/rules/{ruleId}/fingerprints")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRuleFingerprints(@PathParam("ruleId") String ruleId, @QueryParam("limit") Integer limit) {
+        try {
+            scanIndex.ensureLoaded(MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE));
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("ruleId", ruleId);
+            response.put("fingerprints", scanIndex.getRuleFingerprints(ruleId, limit != null ? limit : DEFAULT_LIMIT));
+            
+            return Response.ok(response).build();
+            
+        } catch (RepositoryException e) {
+            log.error("Error listing fingerprints for rule {}", ruleId, e);
+            return buildErrorResponse("Error listing fingerprints for rule: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Build an error response.
+     */
+    private Response buildErrorResponse(String message, Response.Status status) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", false);
+        result.put("message", message);
+        
+        return Response.status(status).entity(result).build();
+    }
+}
@@ -1,30 +1,49 @@
 package work.noice.easya11y.endpoints;
 
 import info.magnolia.context.MgnlContext;
-import info.magnolia.jcr.util.NodeUtil;
 import info.magnolia.jcr.util.PropertyUtil;
 import info.magnolia.rest.AbstractEndpoint;
 import info.magnolia.rest.EndpointDefinition;
 import work.noice.easya11y.models.AccessibilityScanResult;
+import work.noice.easya11y.models.ScanDiff;
+import work.noice.easya11y.models.ScanHistory;
+import work.noice.easya11y.models.ScanResultSummary;
+import work.noice.easya11y.services.ScanResultIndex;
+import work.noice.easya11y.services.ScanSummaryService;
+import work.noice.easya11y.services.WorkspaceChangeTracker;
 
 import javax.inject.Inject;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
-import javax.jcr.query.Query;
-import javax.jcr.query.QueryManager;
-import javax.jcr.query.QueryResult;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
 import java.util.*;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -39,10 +58,20 @@ public class ScanResultsListEndpoint extends AbstractEndpoint<EndpointDefinition
     private static final Logger log = LoggerFactory.getLogger(ScanResultsListEndpoint.class);
     private static final String SCAN_RESULTS_WORKSPACE = "easya11y";
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int DEFAULT_DIFF_PAGES = 100;
+    private static final int DEFAULT_NODE_PAGE_SIZE = 50;
+    
+    private final ScanSummaryService summaryService;
+    private final ScanResultIndex scanIndex;
+    private final WorkspaceChangeTracker changeTracker;
     
     @Inject
-    public ScanResultsListEndpoint(EndpointDefinition definition) {
+    public ScanResultsListEndpoint(EndpointDefinition definition, ScanSummaryService summaryService,
+                                   ScanResultIndex scanIndex, WorkspaceChangeTracker changeTracker) {
         super(definition);
+        this.summaryService = summaryService;
+        this.scanIndex = scanIndex;
+        this.changeTracker = changeTracker;
     }
 
     /**
@@ -54,8 +83,12 @@ public class ScanResultsListEndpoint extends AbstractEndpoint<EndpointDefinition
      * @param dateFrom Filter by date from (timestamp)
      * @param dateTo Filter by date to (timestamp)
      * @param limit Maximum number of results to return
-     * @param offset Offset for pagination
-     * @return HTTP response with scan results
+     * @param offset Offset for pagination, applied after the cursor position
+     * @param cursor Cursor for keyset pagination, as returned in nextCursor of the previous page
+     * @param fields Comma-separated result fields to return, all fields if omitted
+     * @param format rows (default) or columnar to return the results as one array per field
+     * @param request The request, used to evaluate If-None-Match and If-Modified-Since
+     * @return HTTP response with scan results, or 304 if nothing changed since the client's copy
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -66,7 +99,28 @@ public class ScanResultsListEndpoint extends AbstractEndpoint<EndpointDefinition
             @QueryParam("dateFrom") Long dateFrom,
             @QueryParam("dateTo") Long dateTo,
             @QueryParam("limit") Integer limit,
-            @QueryParam("offset") Integer offset) {
+            @QueryParam("offset") Integer offset,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("fields") String fields,
+            @QueryParam("format") String format,
+            @Context Request request) {
+        
+        RowProjection projection;
+        try {
+            projection = RowProjection.parse(fields, format);
+        } catch (IllegalArgumentException e) {
+            return buildErrorResponse(e.getMessage(), Response.Status.BAD_REQUEST);
+        }
+        
+        // Answer conditional requests before touching the repository
+        EntityTag entityTag = changeTracker.getEntityTag(SCAN_RESULTS_WORKSPACE);
+        Date lastModified = changeTracker.getLastModified(SCAN_RESULTS_WORKSPACE);
+        if (entityTag != null) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModified, entityTag);
+            if (notModified != null) {
+                return notModified.cacheControl(revalidate()).build();
+            }
+        }
         
         try {
             Session session = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
@@ -79,51 +133,25 @@ public class ScanResultsListEndpoint extends AbstractEndpoint<EndpointDefinition
                 session.save();
             }
             
-            // Build JCR query
-            String queryStr = buildQuery(pagePath, severity, wcagLevel, dateFrom, dateTo);
-            
-            if (queryStr != null) {
-                QueryManager queryManager = session.getWorkspace().getQueryManager();
-                Query query = queryManager.createQuery(queryStr, Query.JCR_SQL2);
-                
-                // Apply limit and offset
-                if (limit != null && limit > 0) {
-                    query.setLimit(limit);
-                }
-                if (offset != null && offset > 0) {
-                    query.setOffset(offset);
-                }
-                
-                QueryResult queryResult = query.execute();
-                NodeIterator nodeIterator = queryResult.getNodes();
-                
-                while (nodeIterator.hasNext()) {
-                    Node scanNode = nodeIterator.nextNode();
-                    results.add(buildScanResultSummary(scanNode));
-                }
-            } else {
-                // No query, get all results
-                collectAllScanResults(session.getNode("/scanResults"), results);
+            // Filter and page the in-memory index, which is already ordered by scan date
+            scanIndex.ensureLoaded(session);
+            ScanResultIndex.Filter filter = new ScanResultIndex.Filter(pagePath, severity, wcagLevel, dateFrom, dateTo);
+            ScanResultIndex.ResultPage page;
+            try {
+                page = scanIndex.page(filter, cursor,
+                    offset != null && offset > 0 ? offset : 0,
+                    limit != null && limit > 0 ? limit : 0);
+            } catch (IllegalArgumentException e) {
+                return buildErrorResponse(e.getMessage(), Response.Status.BAD_REQUEST);
             }
-            
-            // Sort by scan date descending
-            results.sort((a, b) -> {
-                Long dateA = (Long) a.get("scanDate");
-                Long dateB = (Long) b.get("scanDate");
-                return dateB.compareTo(dateA);
-            });
-            
-            // Apply pagination if not done via query
-            if (queryStr == null && limit != null && limit > 0) {
-                int start = offset != null ? offset : 0;
-                int end = Math.min(start + limit, results.size());
-                results = results.subList(start, end);
+            for (ScanResultSummary match : page.getItems()) {
+                results.add(match.toMap());
             }
             
             // Calculate summary statistics
             Map<String, Object> summary = new HashMap<>();
             try {
-                summary = calculateSummaryStats(session);
+                summary = summaryService.getSummary();
             } catch (Exception e) {
                 log.warn("Could not calculate summary stats: " + e.getMessage());
                 // Return empty stats rather than failing
@@ -139,11 +167,18 @@ public class ScanResultsListEndpoint extends AbstractEndpoint<EndpointDefinition
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("totalResults", results.size());
-            response.put("results", results);
+            response.put("totalResults", page.getTotal());
+            response.put("returnedResults", results.size());
+            response.put("nextCursor", page.getNextCursor());
+            response.put("format", StringUtils.defaultIfBlank(format, RowProjection.FORMAT_ROWS));
+            response.put("results", projection.apply(results));
             response.put("summary", summary);
             
-            return Response.ok(response).build();
+            return Response.ok(response)
+                    .tag(entityTag)
+                    .lastModified(lastModified)
+                    .cacheControl(revalidate())
+                    .build();
             
         } catch (RepositoryException e) {
             log.error("Error listing scan results", e);
@@ -187,7 +222,7 @@ public class ScanResultsListEndpoint extends AbstractEndpoint<EndpointDefinition
                 return Response.ok(response).build();
             } else {
                 // Build from stored properties
-                Map<String, Object> result = buildScanResultSummary(scanNode);
+                Map<String, Object> result = ScanResultSummary.fromNode(scanNode).toMap();
                 
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
@@ -203,44 +238,479 @@ public class ScanResultsListEndpoint extends AbstractEndpoint<EndpointDefinition
     }
 
     /**
-     * Export scan results as CSV.
+     * Get the violations of a page without their nodes, with the number of nodes of each.
+     * Nodes are fetched per violation from /detail/violations/{ruleId}/nodes.
      *
-     * @return CSV file with scan results
+     * @param pagePath The page path
+     * @param request The request, used to evaluate If-None-Match and If-Modified-Since
+     * @return HTTP response with the violation summaries
      */
     @GET
-    @Path("/export/csv")
-    @Produces("text/csv")
-    public Response exportCsv(@QueryParam("pagePath") String pagePath) {
+    @Path("/detail/violations")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getViolationSummaries(@QueryParam("pagePath") String pagePath, @Context Request request) {
+        if (StringUtils.isBlank(pagePath)) {
+            return buildErrorResponse("Page path is required", Response.Status.BAD_REQUEST);
+        }
+
+        EntityTag entityTag = changeTracker.getEntityTag(SCAN_RESULTS_WORKSPACE);
+        Date lastModified = changeTracker.getLastModified(SCAN_RESULTS_WORKSPACE);
+        if (entityTag != null) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModified, entityTag);
+            if (notModified != null) {
+                return notModified.cacheControl(revalidate()).build();
+            }
+        }
+
         try {
             Session session = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
-            List<Map<String, Object>> results = new ArrayList<>();
+            String scanPath = "/scanResults" + pagePath;
+
+            if (!session.nodeExists(scanPath)) {
+                return buildErrorResponse("No scan results found for page: " + pagePath, Response.Status.NOT_FOUND);
+            }
+
+            Node scanNode = session.getNode(scanPath);
+            List<Map<String, Object>> violations = scanNode.hasProperty("fullResults")
+                ? FullResultsReader.readViolationSummaries(PropertyUtil.getString(scanNode, "fullResults"))
+                : new ArrayList<>();
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("pagePath", pagePath);
+            response.put("scanId", PropertyUtil.getString(scanNode, "scanId"));
+            response.put("totalViolations", violations.size());
+            response.put("violations", violations);
+
+            return Response.ok(response)
+                    .tag(entityTag)
+                    .lastModified(lastModified)
+                    .cacheControl(revalidate())
+                    .build();
+
+        } catch (RepositoryException | IOException e) {
+            log.error("Error getting violations", e);
+            return buildErrorResponse("Error getting violations: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Get one page of the nodes of a violation.
+     *
+     * @param pagePath The page path
+     * @param ruleId The rule id of the violation
+     * @param offset Number of nodes to skip
+     * @param limit Maximum number of nodes to return (default 50, 0 for all)
+     * @param request The request, used to evaluate If-None-Match and If-Modified-Since
+     * @return HTTP response with the nodes and the total number of nodes of the violation
+     */
+    @GET
+    @Path("/detail/violations/{ruleId}/nodes")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getViolationNodes(
+            @QueryParam("pagePath") String pagePath,
+            @PathParam("ruleId") String ruleId,
+            @QueryParam("offset") Integer offset,
+            @QueryParam("limit") Integer limit,
+            @Context Request request) {
+        if (StringUtils.isBlank(pagePath)) {
+            return buildErrorResponse("Page path is required", Response.Status.BAD_REQUEST);
+        }
+
+        EntityTag entityTag = changeTracker.getEntityTag(SCAN_RESULTS_WORKSPACE);
+        Date lastModified = changeTracker.getLastModified(SCAN_RESULTS_WORKSPACE);
+        if (entityTag != null) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModified, entityTag);
+            if (notModified != null) {
+                return notModified.cacheControl(revalidate()).build();
+            }
+        }
+
+        try {
+            Session session = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
+            String scanPath = "/scanResults" + pagePath;
+
+            if (!session.nodeExists(scanPath)) {
+                return buildErrorResponse("No scan results found for page: " + pagePath, Response.Status.NOT_FOUND);
+            }
+
+            Node scanNode = session.getNode(scanPath);
+            int nodeOffset = offset != null && offset > 0 ? offset : 0;
+            int nodeLimit = limit != null ? limit : DEFAULT_NODE_PAGE_SIZE;
+            FullResultsReader.NodePage page = scanNode.hasProperty("fullResults")
+                ? FullResultsReader.readViolationNodes(PropertyUtil.getString(scanNode, "fullResults"), ruleId, nodeOffset, nodeLimit)
+                : null;
+            if (page == null) {
+                return buildErrorResponse("No violation " + ruleId + " found for page: " + pagePath, Response.Status.NOT_FOUND);
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("pagePath", pagePath);
+            response.put("ruleId", ruleId);
+            response.put("offset", nodeOffset);
+            response.put("totalNodes", page.getTotal());
+            response.put("hasMore", nodeOffset + page.getNodes().size() < page.getTotal());
+            response.put("nodes", page.getNodes());
+
+            return Response.ok(response)
+                    .tag(entityTag)
+                    .lastModified(lastModified)
+                    .cacheControl(revalidate())
+                    .build();
+
+        } catch (RepositoryException | IOException e) {
+            log.error("Error getting violation nodes", e);
+            return buildErrorResponse("Error getting violation nodes: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Get the retained scan history of a page, newest first.
+     *
+     * @param pagePath The page path
+     * @return HTTP response with the history entries
+     */
+    @GET
+    @Path("/history")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getScanHistory(@QueryParam("pagePath") String pagePath) {
+        if (StringUtils.isBlank(pagePath)) {
+            return buildErrorResponse("Page path is required", Response.Status.BAD_REQUEST);
+        }
+        
+        try {
+            Session session = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
+            String scanPath = "/scanResults" + pagePath;
+            
+            if (!session.nodeExists(scanPath)) {
+                return buildErrorResponse("No scan results found for page: " + pagePath, Response.Status.NOT_FOUND);
+            }
+            
+            List<Map<String, Object>> history = new ArrayList<>();
+            for (ScanHistory.Entry entry : ScanHistory.fromNode(session.getNode(scanPath)).getEntries()) {
+                history.add(0, entry.toMap());
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("pagePath", pagePath);
+            response.put("history", history);
+            
+            return Response.ok(response).build();
+            
+        } catch (RepositoryException e) {
+            log.error("Error getting scan history", e);
+            return buildErrorResponse("Error getting scan history: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Compare the violations of two retained scans of a page.
+     * Violations are matched by fingerprint, so no full results are read or returned.
+     *
+     * @param pagePath The page path
+     * @param from Scan id of the earlier scan, defaults to the scan before the later one
+     * @param to Scan id of the later scan, defaults to the latest scan
+     * @return HTTP response with new, fixed and unchanged violations
+     */
+    @GET
+    @Path("/diff")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response diffScans(
+            @QueryParam("pagePath") String pagePath,
+            @QueryParam("from") String from,
+            @QueryParam("to") String to) {
+        if (StringUtils.isBlank(pagePath)) {
+            return buildErrorResponse("Page path is required", Response.Status.BAD_REQUEST);
+        }
+        
+        try {
+            Session session = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
+            String scanPath = "/scanResults" + pagePath;
+            
+            if (!session.nodeExists(scanPath)) {
+                return buildErrorResponse("No scan results found for page: " + pagePath, Response.Status.NOT_FOUND);
+            }
             
-            if (StringUtils.isNotBlank(pagePath)) {
-                String scanPath = "/scanResults" + pagePath;
-                if (session.nodeExists(scanPath)) {
-                    results.add(buildScanResultSummary(session.getNode(scanPath)));
+            ScanHistory history = ScanHistory.fromNode(session.getNode(scanPath));
+            ScanHistory.Entry toScan = StringUtils.isBlank(to) ? history.getLatest() : history.findByScanId(to);
+            if (toScan == null) {
+                return buildErrorResponse("Scan not found in history: " + to, Response.Status.NOT_FOUND);
+            }
+            ScanHistory.Entry fromScan = StringUtils.isBlank(from) ? history.getPrevious(toScan.getScanId()) : history.findByScanId(from);
+            if (fromScan == null) {
+                return buildErrorResponse(StringUtils.isBlank(from) ? "No earlier scan retained for page: " + pagePath
+                        : "Scan not found in history: " + from, Response.Status.NOT_FOUND);
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("pagePath", pagePath);
+            response.put("from", fromScan.toMap());
+            response.put("to", toScan.toMap());
+            response.put("diff", ScanDiff.between(fromScan.getFingerprints(), toScan.getFingerprints()).toMap(true));
+            
+            return Response.ok(response).build();
+            
+        } catch (RepositoryException e) {
+            log.error("Error comparing scans", e);
+            return buildErrorResponse("Error comparing scans: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Compare the violations of all pages between two scheduled runs.
+     * Only pages scanned in both runs are compared.
+     *
+     * @param fromRun Id of the earlier run
+     * @param toRun Id of the later run
+     * @param limit Maximum number of changed pages to return (default 100, 0 for all)
+     * @return HTTP response with totals, per-rule changes and the pages with most new violations
+     */
+    @GET
+    @Path("/diff/site")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response diffRuns(
+            @QueryParam("fromRun") String fromRun,
+            @QueryParam("toRun") String toRun,
+            @QueryParam("limit") Integer limit) {
+        if (StringUtils.isBlank(fromRun) || StringUtils.isBlank(toRun)) {
+            return buildErrorResponse("fromRun and toRun are required", Response.Status.BAD_REQUEST);
+        }
+        
+        try {
+            Session session = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
+            scanIndex.ensureLoaded(session);
+            
+            int pagesCompared = 0;
+            long totalNew = 0;
+            long totalFixed = 0;
+            long totalUnchanged = 0;
+            Map<String, long[]> byRule = new TreeMap<>();
+            List<Map<String, Object>> changedPages = new ArrayList<>();
+            
+            for (ScanResultSummary summary : scanIndex.getAll()) {
+                String scanPath = "/scanResults" + summary.getPagePath();
+                if (!session.nodeExists(scanPath)) {
+                    continue;
+                }
+                ScanHistory history = ScanHistory.fromNode(session.getNode(scanPath));
+                ScanHistory.Entry fromScan = history.findByRunId(fromRun);
+                ScanHistory.Entry toScan = history.findByRunId(toRun);
+                if (fromScan == null || toScan == null) {
+                    continue;
+                }
+                
+                ScanDiff diff = ScanDiff.between(fromScan.getFingerprints(), toScan.getFingerprints());
+                pagesCompared++;
+                totalNew += diff.getNewViolations().size();
+                totalFixed += diff.getFixedViolations().size();
+                totalUnchanged += diff.getUnchangedViolations().size();
+                for (String fingerprint : diff.getNewViolations()) {
+                    byRule.computeIfAbsent(ScanResultSummary.getFingerprintRule(fingerprint), key -> new long[2])[0]++;
+                }
+                for (String fingerprint : diff.getFixedViolations()) {
+                    byRule.computeIfAbsent(ScanResultSummary.getFingerprintRule(fingerprint), key -> new long[2])[1]++;
+                }
+                
+                if (!diff.getNewViolations().isEmpty() || !diff.getFixedViolations().isEmpty()) {
+                    Map<String, Object> page = diff.toMap(false);
+                    page.put("pagePath", summary.getPagePath());
+                    page.put("fromScore", fromScan.getScore());
+                    page.put("toScore", toScan.getScore());
+                    changedPages.add(page);
+                }
+            }
+            
+            changedPages.sort((a, b) -> Integer.compare((Integer) b.get("newCount"), (Integer) a.get("newCount")));
+            int changedPageCount = changedPages.size();
+            int maxPages = limit != null ? limit : DEFAULT_DIFF_PAGES;
+            if (maxPages > 0 && changedPages.size() > maxPages) {
+                changedPages = changedPages.subList(0, maxPages);
+            }
+            
+            List<Map<String, Object>> rules = new ArrayList<>();
+            for (Map.Entry<String, long[]> entry : byRule.entrySet()) {
+                Map<String, Object> rule = new HashMap<>();
+                rule.put("ruleId", entry.getKey());
+                rule.put("newCount", entry.getValue()[0]);
+                rule.put("fixedCount", entry.getValue()[1]);
+                rules.add(rule);
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("fromRun", fromRun);
+            response.put("toRun", toRun);
+            response.put("pagesCompared", pagesCompared);
+            response.put("changedPageCount", changedPageCount);
+            response.put("newCount", totalNew);
+            response.put("fixedCount", totalFixed);
+            response.put("unchangedCount", totalUnchanged);
+            response.put("rules", rules);
+            response.put("pages", changedPages);
+            
+            return Response.ok(response).build();
+            
+        } catch (RepositoryException e) {
+            log.error("Error comparing runs", e);
+            return buildErrorResponse("Error comparing runs: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Get the rolled-up statistics of a section and of its direct children.
+     * Rollups are maintained on every result write, so this never reads the results below the section.
+     *
+     * @param path The section path, defaults to the site root
+     * @return HTTP response with the section rollup and child rollups
+     */
+    @GET
+    @Path("/rollup")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRollup(@QueryParam("path") String path) {
+        try {
+            Session session = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
+            String sectionPath = StringUtils.isBlank(path) || "/".equals(path) ? "" : StringUtils.removeEnd(path, "/");
+            String scanPath = "/scanResults" + sectionPath;
+            
+            if (!session.nodeExists(scanPath)) {
+                return buildErrorResponse("No scan results found below: " + path, Response.Status.NOT_FOUND);
+            }
+            
+            // Make sure rollups of results stored before they existed are built
+            summaryService.getSummary();
+            
+            Node sectionNode = session.getNode(scanPath);
+            Map<String, Object> rollup = summaryService.getRollup(sectionNode);
+            rollup.put("path", sectionPath.isEmpty() ? "/" : sectionPath);
+            
+            List<Map<String, Object>> children = new ArrayList<>();
+            NodeIterator childNodes = sectionNode.getNodes();
+            while (childNodes.hasNext()) {
+                Node child = childNodes.nextNode();
+                if (child.getName().startsWith("jcr:") || child.getName().startsWith("mgnl:")) {
+                    continue;
+                }
+                Map<String, Object> childRollup = summaryService.getRollup(child);
+                childRollup.put("path", ScanResultSummary.toPagePath(child.getPath()));
+                childRollup.put("hasResult", child.hasProperty("scanId"));
+                children.add(childRollup);
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("rollup", rollup);
+            response.put("children", children);
+            
+            return Response.ok(response).build();
+            
+        } catch (RepositoryException e) {
+            log.error("Error getting scan result rollup", e);
+            return buildErrorResponse("Error getting scan result rollup: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Delete the stored scan result for a specific page.
+     * Results of descendant pages are kept.
+     *
+     * @param pagePath The page path
+     * @return HTTP response indicating success or failure
+     */
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response deleteScanResult(@QueryParam("pagePath") String pagePath) {
+        if (StringUtils.isBlank(pagePath)) {
+            return buildErrorResponse("Page path is required", Response.Status.BAD_REQUEST);
+        }
+        
+        try {
+            Session session = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
+            String scanPath = "/scanResults" + pagePath;
+            
+            if (!session.nodeExists(scanPath)) {
+                return buildErrorResponse("No scan results found for page: " + pagePath, Response.Status.NOT_FOUND);
+            }
+            
+            Node scanNode = session.getNode(scanPath);
+            ScanSummaryService.Contribution previous = ScanSummaryService.Contribution.fromNode(scanNode);
+            
+            boolean keepNode = scanNode.hasNodes();
+            if (keepNode) {
+                // Keep the node as a parent of descendant results, only drop its own scan data and keep its rollups
+                PropertyIterator properties = scanNode.getProperties();
+                while (properties.hasNext()) {
+                    Property property = properties.nextProperty();
+                    String name = property.getName();
+                    if (!name.startsWith("jcr:") && !name.startsWith("mgnl:") && !name.startsWith("rollup_")) {
+                        property.remove();
+                    }
                 }
             } else {
-                collectAllScanResults(session.getNode("/scanResults"), results);
+                scanNode.remove();
             }
             
-            // Build CSV
-            StringBuilder csv = new StringBuilder();
-            csv.append("Page Path,Page Title,Scan Date,Score,Violations,Critical,Serious,Moderate,Minor\n");
-            
-            for (Map<String, Object> result : results) {
-                csv.append(escapeCsv((String) result.get("pagePath"))).append(",");
-                csv.append(escapeCsv((String) result.get("pageTitle"))).append(",");
-                csv.append(new Date((Long) result.get("scanDate"))).append(",");
-                csv.append(result.get("score")).append(",");
-                csv.append(result.get("violationCount")).append(",");
-                csv.append(result.get("criticalCount")).append(",");
-                csv.append(result.get("seriousCount")).append(",");
-                csv.append(result.get("moderateCount")).append(",");
-                csv.append(result.get("minorCount")).append("\n");
+            session.save();
+            summaryService.recordChange(scanPath, previous, null);
+            if (keepNode) {
+                scanIndex.update(scanNode);
+            } else {
+                scanIndex.remove(pagePath);
             }
+            changeTracker.markChanged(SCAN_RESULTS_WORKSPACE);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Scan result deleted");
             
-            return Response.ok(csv.toString())
+            return Response.ok(response).build();
+            
+        } catch (RepositoryException e) {
+            log.error("Error deleting scan result", e);
+            return buildErrorResponse("Error deleting scan result: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Export scan results as CSV.
+     * Rows are written while the results are iterated, so memory use does not grow with the number of pages.
+     *
+     * @param pagePath Optional page path to export a single page
+     * @return CSV file with scan results
+     */
+    @GET
+    @Path("/export/csv")
+    @Produces("text/csv")
+    public Response exportCsv(@QueryParam("pagePath") String pagePath) {
+        try {
+            Stream<ScanResultSummary> summaries = streamSummaries(pagePath);
+            
+            StreamingOutput output = outputStream -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+                writeCsvRow(writer, "Page Path", "Page Title", "Scan Date", "Score", "Violations",
+                    "Critical", "Serious", "Moderate", "Minor");
+                writer.flush();
+                
+                Iterator<ScanResultSummary> iterator = summaries.iterator();
+                while (iterator.hasNext()) {
+                    ScanResultSummary summary = iterator.next();
+                    writeCsvRow(writer,
+                        summary.getPagePath(),
+                        summary.getPageTitle(),
+                        new Date(summary.getScanDate()).toString(),
+                        String.valueOf(summary.getScore()),
+                        String.valueOf(summary.getViolationCount()),
+                        String.valueOf(summary.getCriticalCount()),
+                        String.valueOf(summary.getSeriousCount()),
+                        String.valueOf(summary.getModerateCount()),
+                        String.valueOf(summary.getMinorCount()));
+                }
+                writer.flush();
+            };
+            
+            return Response.ok(output)
                     .header("Content-Disposition", "attachment; filename=\"accessibility-scan-results.csv\"")
                     .build();
                     
@@ -253,153 +723,166 @@ public class ScanResultsListEndpoint extends AbstractEndpoint<EndpointDefinition
     }
 
     /**
-     * Build JCR query based on filters.
+     * Export scan results as newline-delimited JSON, one result summary per line.
+     *
+     * @param pagePath Optional page path to export a single page
+     * @return NDJSON file with scan results
      */
-    private String buildQuery(String pagePath, String severity, String wcagLevel, Long dateFrom, Long dateTo) {
-        List<String> conditions = new ArrayList<>();
-        
-        if (StringUtils.isNotBlank(pagePath)) {
-            conditions.add("[jcr:path] LIKE '/scanResults" + pagePath + "%'");
-        }
-        
-        if (StringUtils.isNotBlank(severity)) {
-            conditions.add("[violations_" + severity + "] > 0");
-        }
-        
-        if (StringUtils.isNotBlank(wcagLevel)) {
-            conditions.add("[wcagLevel] = '" + wcagLevel + "'");
-        }
-        
-        if (dateFrom != null) {
-            conditions.add("[scanDate] >= " + dateFrom);
-        }
-        
-        if (dateTo != null) {
-            conditions.add("[scanDate] <= " + dateTo);
-        }
-        
-        if (conditions.isEmpty()) {
-            return null;
+    @GET
+    @Path("/export/ndjson")
+    @Produces("application/x-ndjson")
+    public Response exportNdjson(@QueryParam("pagePath") String pagePath) {
+        try {
+            Stream<ScanResultSummary> summaries = streamSummaries(pagePath);
+            
+            StreamingOutput output = outputStream -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+                Iterator<ScanResultSummary> iterator = summaries.iterator();
+                while (iterator.hasNext()) {
+                    writer.write(objectMapper.writeValueAsString(iterator.next().toMap()));
+                    writer.write('\n');
+                }
+                writer.flush();
+            };
+            
+            return Response.ok(output)
+                    .header("Content-Disposition", "attachment; filename=\"accessibility-scan-results.ndjson\"")
+                    .build();
+                    
+        } catch (RepositoryException e) {
+            log.error("Error exporting NDJSON", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Error exporting NDJSON: " + e.getMessage())
+                    .build();
         }
-        
-        return "SELECT * FROM [mgnl:content] WHERE " + String.join(" AND ", conditions);
     }
 
     /**
-     * Collect all scan results recursively.
+     * Export violations with one row per affected element (violation node).
+     * The full results of each page are read and released one page at a time.
+     *
+     * @param pagePath Optional page path to export a single page
+     * @param format csv (default) or ndjson
+     * @return CSV or NDJSON file with violations
      */
-    private void collectAllScanResults(Node node, List<Map<String, Object>> results) throws RepositoryException {
-        if (NodeUtil.isNodeType(node, "mgnl:content") && node.hasProperty("scanId")) {
-            results.add(buildScanResultSummary(node));
+    @GET
+    @Path("/export/violations")
+    @Produces({"text/csv", "application/x-ndjson"})
+    public Response exportViolations(@QueryParam("pagePath") String pagePath, @QueryParam("format") String format) {
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        if (StringUtils.isNotBlank(format) && !ndjson && !"csv".equalsIgnoreCase(format)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Unsupported export format: " + format)
+                    .build();
         }
         
-        NodeIterator children = node.getNodes();
-        while (children.hasNext()) {
-            Node child = children.nextNode();
-            if (!child.getName().startsWith("jcr:") && !child.getName().startsWith("mgnl:")) {
-                collectAllScanResults(child, results);
-            }
+        try {
+            Session session = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
+            Stream<ScanResultSummary> summaries = streamSummaries(pagePath);
+            
+            StreamingOutput output = outputStream -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+                if (!ndjson) {
+                    writeCsvRow(writer, "Page Path", "Page Title", "Scan Date", "Rule", "Impact", "Help",
+                        "Target", "HTML", "Failure Summary", "Help URL");
+                    writer.flush();
+                }
+                
+                Iterator<ScanResultSummary> iterator = summaries.iterator();
+                while (iterator.hasNext()) {
+                    ScanResultSummary summary = iterator.next();
+                    JsonNode violations = readViolations(session, summary.getPagePath());
+                    for (JsonNode violation : violations) {
+                        for (JsonNode node : violation.path("nodes")) {
+                            if (ndjson) {
+                                Map<String, Object> row = new LinkedHashMap<>();
+                                row.put("pagePath", summary.getPagePath());
+                                row.put("pageTitle", summary.getPageTitle());
+                                row.put("scanDate", summary.getScanDate());
+                                row.put("rule", violation.path("id").asText(""));
+                                row.put("impact", violation.path("impact").asText(""));
+                                row.put("help", violation.path("help").asText(""));
+                                row.put("target", node.path("target").asText(""));
+                                row.put("html", node.path("html").asText(""));
+                                row.put("failureSummary", node.path("failureSummary").asText(""));
+                                row.put("helpUrl", violation.path("helpUrl").asText(""));
+                                writer.write(objectMapper.writeValueAsString(row));
+                                writer.write('\n');
+                            } else {
+                                writeCsvRow(writer,
+                                    summary.getPagePath(),
+                                    summary.getPageTitle(),
+                                    new Date(summary.getScanDate()).toString(),
+                                    violation.path("id").asText(""),
+                                    violation.path("impact").asText(""),
+                                    violation.path("help").asText(""),
+                                    node.path("target").asText(""),
+                                    node.path("html").asText(""),
+                                    node.path("failureSummary").asText(""),
+                                    violation.path("helpUrl").asText(""));
+                            }
+                        }
+                    }
+                }
+                writer.flush();
+            };
+            
+            String extension = ndjson ? "ndjson" : "csv";
+            return Response.ok(output, ndjson ? "application/x-ndjson" : "text/csv")
+                    .header("Content-Disposition", "attachment; filename=\"accessibility-violations." + extension + "\"")
+                    .build();
+                    
+        } catch (RepositoryException e) {
+            log.error("Error exporting violations", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Error exporting violations: " + e.getMessage())
+                    .build();
         }
     }
 
     /**
-     * Build scan result summary from node.
+     * Stream the summaries to export: a single page if a page path is given, otherwise all results.
      */
-    private Map<String, Object> buildScanResultSummary(Node scanNode) throws RepositoryException {
-        Map<String, Object> summary = new HashMap<>();
-        
-        // Extract page path from node path
-        String nodePath = scanNode.getPath();
-        String pagePath = nodePath.replace("/scanResults", "");
-        
-        summary.put("scanId", PropertyUtil.getString(scanNode, "scanId", ""));
-        summary.put("pagePath", pagePath);
-        summary.put("pageUrl", PropertyUtil.getString(scanNode, "pageUrl", ""));
-        summary.put("pageTitle", PropertyUtil.getString(scanNode, "pageTitle", ""));
-        summary.put("scanDate", PropertyUtil.getLong(scanNode, "scanDate", 0L));
-        summary.put("wcagLevel", PropertyUtil.getString(scanNode, "wcagLevel", "AA"));
-        summary.put("score", scanNode.hasProperty("score") ? scanNode.getProperty("score").getDouble() : 0.0);
-        summary.put("violationCount", PropertyUtil.getLong(scanNode, "violationCount", 0L));
-        summary.put("passCount", PropertyUtil.getLong(scanNode, "passCount", 0L));
-        
-        // Violation counts by impact
-        summary.put("criticalCount", PropertyUtil.getLong(scanNode, "violations_critical", 0L));
-        summary.put("seriousCount", PropertyUtil.getLong(scanNode, "violations_serious", 0L));
-        summary.put("moderateCount", PropertyUtil.getLong(scanNode, "violations_moderate", 0L));
-        summary.put("minorCount", PropertyUtil.getLong(scanNode, "violations_minor", 0L));
-        
-        return summary;
+    private Stream<ScanResultSummary> streamSummaries(String pagePath) throws RepositoryException {
+        scanIndex.ensureLoaded(MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE));
+        if (StringUtils.isNotBlank(pagePath)) {
+            ScanResultSummary summary = scanIndex.get(pagePath);
+            return summary != null ? Stream.of(summary) : Stream.empty();
+        }
+        return scanIndex.stream(ScanResultIndex.Filter.all());
     }
 
     /**
-     * Calculate summary statistics for all scan results.
+     * Read the violations array from the stored full results of a page.
+     *
+     * @return The violations, or an empty array if the page has no full results
      */
-    private Map<String, Object> calculateSummaryStats(Session session) throws RepositoryException {
-        Map<String, Object> stats = new HashMap<>();
-        
-        if (!session.nodeExists("/scanResults")) {
-            // Return empty stats if no scan results exist yet
-            stats.put("totalScans", 0);
-            stats.put("averageScore", 0.0);
-            stats.put("totalCritical", 0L);
-            stats.put("totalSerious", 0L);
-            stats.put("totalModerate", 0L);
-            stats.put("totalMinor", 0L);
-            stats.put("totalViolations", 0L);
-            stats.put("perfectScorePages", 0L);
-            return stats;
+    private JsonNode readViolations(Session session, String pagePath) throws IOException {
+        try {
+            String scanPath = "/scanResults" + pagePath;
+            if (session.nodeExists(scanPath)) {
+                Node scanNode = session.getNode(scanPath);
+                if (scanNode.hasProperty("fullResults")) {
+                    return objectMapper.readTree(PropertyUtil.getString(scanNode, "fullResults")).path("violations");
+                }
+            }
+            return objectMapper.createArrayNode();
+        } catch (RepositoryException e) {
+            throw new IOException("Could not read scan results for page: " + pagePath, e);
         }
-        
-        Node rootNode = session.getNode("/scanResults");
-        List<Map<String, Object>> allResults = new ArrayList<>();
-        collectAllScanResults(rootNode, allResults);
-        
-        stats.put("totalScans", allResults.size());
-        
-        if (!allResults.isEmpty()) {
-            // Average score
-            double avgScore = allResults.stream()
-                    .mapToDouble(r -> (Double) r.get("score"))
-                    .average()
-                    .orElse(0.0);
-            stats.put("averageScore", Math.round(avgScore * 10) / 10.0);
-            
-            // Total violations by impact
-            long totalCritical = allResults.stream()
-                    .mapToLong(r -> (Long) r.get("criticalCount"))
-                    .sum();
-            long totalSerious = allResults.stream()
-                    .mapToLong(r -> (Long) r.get("seriousCount"))
-                    .sum();
-            long totalModerate = allResults.stream()
-                    .mapToLong(r -> (Long) r.get("moderateCount"))
-                    .sum();
-            long totalMinor = allResults.stream()
-                    .mapToLong(r -> (Long) r.get("minorCount"))
-                    .sum();
-            
-            stats.put("totalCritical", totalCritical);
-            stats.put("totalSerious", totalSerious);
-            stats.put("totalModerate", totalModerate);
-            stats.put("totalMinor", totalMinor);
-            stats.put("totalViolations", totalCritical + totalSerious + totalModerate + totalMinor);
-            
-            // Pages with perfect score
-            long perfectScoreCount = allResults.stream()
-                    .filter(r -> (Double) r.get("score") == 100.0)
-                    .count();
-            stats.put("perfectScorePages", perfectScoreCount);
-        } else {
-            stats.put("averageScore", 0.0);
-            stats.put("totalCritical", 0L);
-            stats.put("totalSerious", 0L);
-            stats.put("totalModerate", 0L);
-            stats.put("totalMinor", 0L);
-            stats.put("totalViolations", 0L);
-            stats.put("perfectScorePages", 0L);
+    }
+
+    /**
+     * Write one CSV row.
+     */
+    private void writeCsvRow(Writer writer, String... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escapeCsv(values[i]));
         }
-        
-        return stats;
+        writer.write('\n');
     }
 
     /**
@@ -413,6 +896,16 @@ public class ScanResultsListEndpoint extends AbstractEndpoint<EndpointDefinition
         return value;
     }
 
+    /**
+     * Cache control that lets clients keep a copy but revalidate it on every use.
+     */
+    private CacheControl revalidate() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        cacheControl.setPrivate(true);
+        return cacheControl;
+    }
+
     /**
      * Build an error response.
      */
@@ -0,0 +1,169 @@
+package work.noice.easya11y.models;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the module configuration stored at /configuration in the easya11y workspace.
+ * Settings missing from the node take their defaults.
+ */
+public final class ModuleConfiguration {
+
+    private static final ModuleConfiguration DEFAULTS = new ModuleConfiguration(Collections.<String, String>emptyMap());
+
+    private final Map<String, String> properties;
+    private final String wcagVersion;
+    private final String wcagLevel;
+    private final boolean serverSideScan;
+    private final boolean scanScheduleEnabled;
+    private final List<String> scanPaths;
+    private final List<String> excludePaths;
+    private final boolean emailEnabled;
+    private final boolean emailDigest;
+    private final boolean emailOnViolations;
+    private final List<String> emailRecipients;
+    private final String emailFrom;
+    private final long scanCacheMaxAge;
+    private final int maxConcurrentScans;
+    private final int maxQueuedScans;
+    private final long targetPageLoadMillis;
+
+    private ModuleConfiguration(Map<String, String> properties) {
+        this.properties = Collections.unmodifiableMap(new LinkedHashMap<>(properties));
+        this.wcagVersion = getString(properties, "wcagVersion", "2.2");
+        this.wcagLevel = getString(properties, "wcagLevel", "AA");
+        this.serverSideScan = getBoolean(properties, "serverSideScan", true);
+        this.scanScheduleEnabled = getBoolean(properties, "scanScheduleEnabled", false);
+        this.scanPaths = getList(properties, "scanPaths");
+        this.excludePaths = getList(properties, "excludePaths");
+        this.emailEnabled = getBoolean(properties, "emailEnabled", false);
+        this.emailDigest = getBoolean(properties, "emailDigest", true);
+        this.emailOnViolations = getBoolean(properties, "emailOnViolations", true);
+        this.emailRecipients = getList(properties, "emailRecipients");
+        this.emailFrom = getString(properties, "emailFrom", null);
+        this.scanCacheMaxAge = getLong(properties, "scanCacheMaxAge", 60) * 60 * 1000L;
+        this.maxConcurrentScans = (int) getLong(properties, "maxConcurrentScans", 4);
+        this.maxQueuedScans = (int) getLong(properties, "maxQueuedScans", 10);
+        this.targetPageLoadMillis = getLong(properties, "targetPageLoadMillis", 3000);
+    }
+
+    /**
+     * The configuration used when no configuration node exists.
+     */
+    public static ModuleConfiguration defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Build a configuration from property values, e.g. as returned by {@link #asMap()}.
+     *
+     * @param properties The property values by name
+     * @return The configuration snapshot
+     */
+    public static ModuleConfiguration fromProperties(Map<String, String> properties) {
+        return new ModuleConfiguration(properties);
+    }
+
+    /**
+     * Read the configuration from the configuration node.
+     *
+     * @param configNode The configuration node
+     * @return The configuration snapshot
+     */
+    public static ModuleConfiguration fromNode(Node configNode) throws RepositoryException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        PropertyIterator iterator = configNode.getProperties();
+        while (iterator.hasNext()) {
+            Property property = iterator.nextProperty();
+            String propertyName = property.getName();
+
+            // Skip JCR system properties
+            if (!propertyName.startsWith("jcr:") && !propertyName.startsWith("mgnl:") && !property.isMultiple()) {
+                properties.put(propertyName, property.getString());
+            }
+        }
+        return new ModuleConfiguration(properties);
+    }
+
+    private static String getString(Map<String, String> properties, String name, String defaultValue) {
+        String value = properties.get(name);
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
+
+    private static boolean getBoolean(Map<String, String> properties, String name, boolean defaultValue) {
+        String value = properties.get(name);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
+    private static long getLong(Map<String, String> properties, String name, long defaultValue) {
+        String value = properties.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static List<String> getList(Map<String, String> properties, String name) {
+        String value = properties.get(name);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                values.add(item.trim());
+            }
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * All stored settings as strings, as returned by the configuration endpoint.
+     */
+    public Map<String, String> asMap() { return properties; }
+    public String getWcagVersion() { return wcagVersion; }
+    public String getWcagLevel() { return wcagLevel; }
+    public boolean isServerSideScan() { return serverSideScan; }
+    public boolean isScanScheduleEnabled() { return scanScheduleEnabled; }
+    public List<String> getScanPaths() { return scanPaths; }
+    public List<String> getExcludePaths() { return excludePaths; }
+    public boolean isEmailEnabled() { return emailEnabled; }
+    public boolean isEmailDigest() { return emailDigest; }
+    public boolean isEmailOnViolations() { return emailOnViolations; }
+    public List<String> getEmailRecipients() { return emailRecipients; }
+    public String getEmailFrom() { return emailFrom; }
+
+    /**
+     * Maximum age in milliseconds of a stored result that an on-demand server scan may return instead
+     * of scanning again, set in minutes as scanCacheMaxAge (default 60, 0 to always scan).
+     */
+    public long getScanCacheMaxAge() { return scanCacheMaxAge; }
+
+    /**
+     * Maximum number of server-side scans running at once (default 4). The scanner runs fewer while
+     * pages load slower than {@link #getTargetPageLoadMillis()}.
+     */
+    public int getMaxConcurrentScans() { return maxConcurrentScans; }
+
+    /**
+     * Maximum number of interactive server-side scans waiting for a free slot (default 10).
+     */
+    public int getMaxQueuedScans() { return maxQueuedScans; }
+
+    /**
+     * Page load time in milliseconds that server-side scans should stay under (default 3000, 0 to always
+     * run {@link #getMaxConcurrentScans()} scans).
+     */
+    public long getTargetPageLoadMillis() { return targetPageLoadMillis; }
+}
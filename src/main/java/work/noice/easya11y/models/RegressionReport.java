@@ -0,0 +1,156 @@
+package work.noice.easya11y.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Regressions found in a scan run, compared page by page against each page's scan in its previous run.
+ * Pages are recorded one at a time from the responses of storing their results, which for a scan of a run
+ * already carry the score and the new violation counts of the previous run, so building the report adds
+ * no extra reads. Single scans between the runs are not compared with.
+ */
+public class RegressionReport {
+
+    private final String runId;
+    private final double scoreDropThreshold;
+    private final List<PageRegression> regressions = new ArrayList<>();
+    private int pagesScanned;
+    private int pagesCompared;
+    private int pagesImproved;
+    private long newCritical;
+    private long newSerious;
+    private long fixedViolations;
+
+    /**
+     * @param runId Id of the run
+     * @param scoreDropThreshold Minimum score drop, in points, that counts as a regression
+     */
+    public RegressionReport(String runId, double scoreDropThreshold) {
+        this.runId = runId;
+        this.scoreDropThreshold = scoreDropThreshold;
+    }
+
+    /**
+     * Record the stored result of one page.
+     *
+     * @param pagePath The page path
+     * @param pageTitle The page title
+     * @param storeResponse The response of storing the scan result
+     */
+    public void record(String pagePath, String pageTitle, Map<String, Object> storeResponse) {
+        pagesScanned++;
+        Object changesValue = storeResponse.get("changes");
+        if (!(changesValue instanceof Map) || !(storeResponse.get("previousScore") instanceof Number)) {
+            // First run of the page, nothing to compare with
+            return;
+        }
+        pagesCompared++;
+
+        Map<?, ?> changes = (Map<?, ?>) changesValue;
+        double score = ((Number) storeResponse.get("score")).doubleValue();
+        double previousScore = ((Number) storeResponse.get("previousScore")).doubleValue();
+        int pageNewCritical = toInt(changes.get("newCritical"));
+        int pageNewSerious = toInt(changes.get("newSerious"));
+        newCritical += pageNewCritical;
+        newSerious += pageNewSerious;
+        fixedViolations += toInt(changes.get("fixedCount"));
+
+        if (previousScore - score >= scoreDropThreshold || pageNewCritical > 0 || pageNewSerious > 0) {
+            regressions.add(new PageRegression(pagePath, pageTitle, previousScore, score,
+                    pageNewCritical, pageNewSerious, toInt(changes.get("newCount"))));
+        } else if (score > previousScore) {
+            pagesImproved++;
+        }
+    }
+
+    private int toInt(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    public boolean hasRegressions() {
+        return !regressions.isEmpty();
+    }
+
+    /**
+     * Build a plain text digest, listing regressed pages with the largest score drop first.
+     */
+    public String toText() {
+        List<PageRegression> sorted = new ArrayList<>(regressions);
+        sorted.sort((a, b) -> Double.compare(b.getScoreDrop(), a.getScoreDrop()));
+
+        StringBuilder text = new StringBuilder();
+        text.append("Accessibility scan run ").append(runId).append('\n');
+        text.append("Pages scanned: ").append(pagesScanned)
+                .append(", compared with previous run: ").append(pagesCompared).append('\n');
+        text.append("Pages regressed: ").append(regressions.size())
+                .append(", improved: ").append(pagesImproved).append('\n');
+        text.append("New critical violations: ").append(newCritical)
+                .append(", new serious violations: ").append(newSerious)
+                .append(", fixed violations: ").append(fixedViolations).append('\n');
+
+        if (!sorted.isEmpty()) {
+            text.append('\n').append("Regressed pages:").append('\n');
+            for (PageRegression regression : sorted) {
+                text.append("- ").append(regression.getPagePath());
+                if (regression.getPageTitle() != null) {
+                    text.append(" (").append(regression.getPageTitle()).append(')');
+                }
+                text.append(": score ").append(format(regression.getPreviousScore()))
+                        .append(" -> ").append(format(regression.getScore()))
+                        .append(", new violations ").append(regression.getNewCount())
+                        .append(" (critical ").append(regression.getNewCritical())
+                        .append(", serious ").append(regression.getNewSerious()).append(')')
+                        .append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private String format(double score) {
+        return String.valueOf(Math.round(score * 10) / 10.0);
+    }
+
+    public String getRunId() { return runId; }
+    public List<PageRegression> getRegressions() { return Collections.unmodifiableList(regressions); }
+    public int getPagesScanned() { return pagesScanned; }
+    public int getPagesCompared() { return pagesCompared; }
+    public int getPagesImproved() { return pagesImproved; }
+    public long getNewCritical() { return newCritical; }
+    public long getNewSerious() { return newSerious; }
+    public long getFixedViolations() { return fixedViolations; }
+
+    /**
+     * A page whose score dropped or that gained critical or serious violations.
+     */
+    public static class PageRegression {
+        private final String pagePath;
+        private final String pageTitle;
+        private final double previousScore;
+        private final double score;
+        private final int newCritical;
+        private final int newSerious;
+        private final int newCount;
+
+        public PageRegression(String pagePath, String pageTitle, double previousScore, double score,
+                              int newCritical, int newSerious, int newCount) {
+            this.pagePath = pagePath;
+            this.pageTitle = pageTitle;
+            this.previousScore = previousScore;
+            this.score = score;
+            this.newCritical = newCritical;
+            this.newSerious = newSerious;
+            this.newCount = newCount;
+        }
+
+        public String getPagePath() { return pagePath; }
+        public String getPageTitle() { return pageTitle; }
+        public double getPreviousScore() { return previousScore; }
+        public double getScore() { return score; }
+        public double getScoreDrop() { return previousScore - score; }
+        public int getNewCritical() { return newCritical; }
+        public int getNewSerious() { return newSerious; }
+        public int getNewCount() { return newCount; }
+    }
+}
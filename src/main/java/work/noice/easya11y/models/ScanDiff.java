@@ -0,0 +1,85 @@
+package work.noice.easya11y.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Difference between the violations of two scans, computed on their violation fingerprints.
+ */
+public class ScanDiff {
+
+    private final Set<String> newViolations;
+    private final Set<String> fixedViolations;
+    private final Set<String> unchangedViolations;
+
+    private ScanDiff(Set<String> newViolations, Set<String> fixedViolations, Set<String> unchangedViolations) {
+        this.newViolations = newViolations;
+        this.fixedViolations = fixedViolations;
+        this.unchangedViolations = unchangedViolations;
+    }
+
+    /**
+     * Compare two fingerprint sets.
+     *
+     * @param from Fingerprints of the earlier scan, or null to treat every later violation as new
+     * @param to Fingerprints of the later scan
+     * @return The diff
+     */
+    public static ScanDiff between(Set<String> from, Set<String> to) {
+        Set<String> newViolations = new LinkedHashSet<>();
+        Set<String> unchangedViolations = new LinkedHashSet<>();
+        for (String fingerprint : to) {
+            if (from != null && from.contains(fingerprint)) {
+                unchangedViolations.add(fingerprint);
+            } else {
+                newViolations.add(fingerprint);
+            }
+        }
+        Set<String> fixedViolations = new LinkedHashSet<>();
+        if (from != null) {
+            for (String fingerprint : from) {
+                if (!to.contains(fingerprint)) {
+                    fixedViolations.add(fingerprint);
+                }
+            }
+        }
+        return new ScanDiff(newViolations, fixedViolations, unchangedViolations);
+    }
+
+    /**
+     * Build the map representation returned by the REST endpoints.
+     *
+     * @param includeFingerprints Whether to include the fingerprint lists or only their sizes
+     */
+    public Map<String, Object> toMap(boolean includeFingerprints) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("newCount", newViolations.size());
+        map.put("fixedCount", fixedViolations.size());
+        map.put("unchangedCount", unchangedViolations.size());
+        if (includeFingerprints) {
+            map.put("new", toList(newViolations));
+            map.put("fixed", toList(fixedViolations));
+            map.put("unchanged", toList(unchangedViolations));
+        }
+        return map;
+    }
+
+    private List<Map<String, String>> toList(Set<String> fingerprints) {
+        List<Map<String, String>> list = new ArrayList<>();
+        for (String fingerprint : fingerprints) {
+            Map<String, String> item = new HashMap<>();
+            item.put("fingerprint", fingerprint);
+            item.put("ruleId", ScanResultSummary.getFingerprintRule(fingerprint));
+            list.add(item);
+        }
+        return list;
+    }
+
+    public Set<String> getNewViolations() { return newViolations; }
+    public Set<String> getFixedViolations() { return fixedViolations; }
+    public Set<String> getUnchangedViolations() { return unchangedViolations; }
+}
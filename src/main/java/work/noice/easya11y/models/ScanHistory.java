@@ -0,0 +1,226 @@
+package work.noice.easya11y.models;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded history of the scans of a page, stored as the multi-value scanHistory property of its scan result node.
+ * Each entry keeps only the scan id, run id, date, score and violation fingerprints, oldest first,
+ * which is enough to diff any two retained scans without their full results.
+ */
+public class ScanHistory {
+
+    public static final String PROPERTY = "scanHistory";
+    public static final int MAX_ENTRIES = 20;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<Entry> entries;
+
+    private ScanHistory(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Read the history of a scan result node.
+     * Results stored before the history existed get a single entry for their current scan.
+     *
+     * @param scanNode The scan result node
+     * @return The history, empty if the node holds no scan
+     */
+    public static ScanHistory fromNode(Node scanNode) throws RepositoryException {
+        List<Entry> entries = new ArrayList<>();
+        if (scanNode.hasProperty(PROPERTY)) {
+            for (Value value : scanNode.getProperty(PROPERTY).getValues()) {
+                try {
+                    entries.add(Entry.fromJson(objectMapper.readTree(value.getString())));
+                } catch (IOException e) {
+                    // Skip unreadable entries, the remaining history is still usable
+                }
+            }
+        } else if (scanNode.hasProperty("scanId")) {
+            ScanResultSummary summary = ScanResultSummary.fromNode(scanNode);
+            String[] fingerprints = new String[summary.getFingerprintCount()];
+            for (int i = 0; i < fingerprints.length; i++) {
+                fingerprints[i] = summary.getFingerprint(i);
+            }
+            String runId = scanNode.hasProperty("runId") ? scanNode.getProperty("runId").getString() : null;
+            entries.add(new Entry(summary.getScanId(), runId, summary.getScanDate(), summary.getScore(), fingerprints));
+        }
+        return new ScanHistory(entries);
+    }
+
+    /**
+     * Append an entry, dropping the oldest entries beyond {@link #MAX_ENTRIES}.
+     */
+    public void append(Entry entry) {
+        entries.add(entry);
+        while (entries.size() > MAX_ENTRIES) {
+            entries.remove(0);
+        }
+    }
+
+    /**
+     * Write the history to a scan result node.
+     */
+    public void write(Node scanNode) throws RepositoryException {
+        String[] values = new String[entries.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = entries.get(i).toJson().toString();
+        }
+        scanNode.setProperty(PROPERTY, values);
+    }
+
+    /**
+     * Get the most recent entry.
+     *
+     * @return The latest entry, or null if the history is empty
+     */
+    public Entry getLatest() {
+        return entries.isEmpty() ? null : entries.get(entries.size() - 1);
+    }
+
+    /**
+     * Get the entry before the given scan.
+     *
+     * @return The preceding entry, or null if the scan is the oldest retained one or not found
+     */
+    public Entry getPrevious(String scanId) {
+        for (int i = 1; i < entries.size(); i++) {
+            if (entries.get(i).getScanId().equals(scanId)) {
+                return entries.get(i - 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the entry of a scan.
+     *
+     * @return The entry, or null if the scan is not retained
+     */
+    public Entry findByScanId(String scanId) {
+        for (Entry entry : entries) {
+            if (entry.getScanId().equals(scanId)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the latest entry of a scheduled run.
+     *
+     * @return The entry, or null if the page was not scanned in the run or the run is not retained
+     */
+    public Entry findByRunId(String runId) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (runId.equals(entries.get(i).getRunId())) {
+                return entries.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the latest entry of a run other than the given one, i.e. the page's scan in its previous run.
+     * Single scans in between are skipped, so a run is always compared with a run.
+     *
+     * @return The entry, or null if no earlier run of the page is retained
+     */
+    public Entry findPreviousRun(String runId) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            String entryRunId = entries.get(i).getRunId();
+            if (entryRunId != null && !entryRunId.equals(runId)) {
+                return entries.get(i);
+            }
+        }
+        return null;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * One retained scan of a page.
+     */
+    public static class Entry {
+        private final String scanId;
+        private final String runId;
+        private final long scanDate;
+        private final double score;
+        private final Set<String> fingerprints;
+
+        public Entry(String scanId, String runId, long scanDate, double score, String[] fingerprints) {
+            this.scanId = scanId;
+            this.runId = runId;
+            this.scanDate = scanDate;
+            this.score = score;
+            this.fingerprints = new LinkedHashSet<>();
+            Collections.addAll(this.fingerprints, fingerprints);
+        }
+
+        static Entry fromJson(JsonNode json) {
+            JsonNode fingerprintsJson = json.path("fingerprints");
+            String[] fingerprints = new String[fingerprintsJson.size()];
+            for (int i = 0; i < fingerprints.length; i++) {
+                fingerprints[i] = fingerprintsJson.get(i).asText();
+            }
+            return new Entry(
+                    json.path("scanId").asText(""),
+                    json.hasNonNull("runId") ? json.get("runId").asText() : null,
+                    json.path("scanDate").asLong(0L),
+                    json.path("score").asDouble(0.0),
+                    fingerprints);
+        }
+
+        JsonNode toJson() {
+            ObjectNode json = objectMapper.createObjectNode();
+            json.put("scanId", scanId);
+            if (runId != null) {
+                json.put("runId", runId);
+            }
+            json.put("scanDate", scanDate);
+            json.put("score", score);
+            ArrayNode fingerprintsJson = json.putArray("fingerprints");
+            for (String fingerprint : fingerprints) {
+                fingerprintsJson.add(fingerprint);
+            }
+            return json;
+        }
+
+        /**
+         * Build the map representation returned by the REST endpoints, without the fingerprints.
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("scanId", scanId);
+            map.put("runId", runId);
+            map.put("scanDate", scanDate);
+            map.put("score", score);
+            map.put("violationNodeCount", fingerprints.size());
+            return map;
+        }
+
+        public String getScanId() { return scanId; }
+        public String getRunId() { return runId; }
+        public long getScanDate() { return scanDate; }
+        public double getScore() { return score; }
+        public Set<String> getFingerprints() { return Collections.unmodifiableSet(fingerprints); }
+    }
+}
@@ -0,0 +1,287 @@
+package work.noice.easya11y.models;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import info.magnolia.jcr.util.PropertyUtil;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact, immutable summary of the latest scan result of a page.
+ * Holds only the fields needed for listing, filtering and exporting, not the full axe results.
+ */
+public class ScanResultSummary {
+
+    private static final String SCAN_RESULTS_PATH = "/scanResults";
+    private static final String[] NO_STRINGS = new String[0];
+    private static final int[] NO_INTS = new int[0];
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String pagePath;
+    private final String scanId;
+    private final String pageUrl;
+    private final String pageTitle;
+    private final long scanDate;
+    private final String wcagLevel;
+    private final double score;
+    private final int violationCount;
+    private final int passCount;
+    private final int criticalCount;
+    private final int seriousCount;
+    private final int moderateCount;
+    private final int minorCount;
+    private final String template;
+    // Violated axe rules with their impact and number of affected nodes, as parallel arrays
+    private final String[] rules;
+    private final String[] ruleImpacts;
+    private final int[] ruleNodeCounts;
+    // Rule id and target selector hash of every violating node, see fingerprint()
+    private final String[] fingerprints;
+
+    public ScanResultSummary(String pagePath, String scanId, String pageUrl, String pageTitle, long scanDate,
+                             String wcagLevel, double score, int violationCount, int passCount,
+                             int criticalCount, int seriousCount, int moderateCount, int minorCount) {
+        this(pagePath, scanId, pageUrl, pageTitle, scanDate, wcagLevel, score, violationCount, passCount,
+                criticalCount, seriousCount, moderateCount, minorCount, null, NO_STRINGS, NO_STRINGS, NO_INTS, NO_STRINGS);
+    }
+
+    public ScanResultSummary(String pagePath, String scanId, String pageUrl, String pageTitle, long scanDate,
+                             String wcagLevel, double score, int violationCount, int passCount,
+                             int criticalCount, int seriousCount, int moderateCount, int minorCount,
+                             String template, String[] rules, String[] ruleImpacts, int[] ruleNodeCounts,
+                             String[] fingerprints) {
+        this.pagePath = pagePath;
+        this.scanId = scanId;
+        this.pageUrl = pageUrl;
+        this.pageTitle = pageTitle;
+        this.scanDate = scanDate;
+        this.wcagLevel = wcagLevel.intern();
+        this.score = score;
+        this.violationCount = violationCount;
+        this.passCount = passCount;
+        this.criticalCount = criticalCount;
+        this.seriousCount = seriousCount;
+        this.moderateCount = moderateCount;
+        this.minorCount = minorCount;
+        this.template = template != null ? template.intern() : null;
+        this.rules = intern(rules);
+        this.ruleImpacts = intern(ruleImpacts);
+        this.ruleNodeCounts = ruleNodeCounts;
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Create a summary that only carries a position in scan date order, for keyset pagination.
+     */
+    public static ScanResultSummary forPosition(long scanDate, String pagePath) {
+        return new ScanResultSummary(pagePath, "", "", "", scanDate, "", 0.0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Read the summary from a scan result node.
+     *
+     * @param scanNode The scan result node under /scanResults
+     * @return The summary
+     */
+    public static ScanResultSummary fromNode(Node scanNode) throws RepositoryException {
+        String[] rules;
+        String[] ruleImpacts;
+        int[] ruleNodeCounts;
+        String[] fingerprints;
+        if (scanNode.hasProperty("violationRules") && scanNode.hasProperty("violationFingerprints")) {
+            rules = getStrings(scanNode, "violationRules");
+            ruleImpacts = getStrings(scanNode, "violationRuleImpacts");
+            ruleNodeCounts = getInts(scanNode, "violationRuleNodes");
+            fingerprints = getStrings(scanNode, "violationFingerprints");
+        } else {
+            // Results stored before per-rule properties existed only have the rules in the full results
+            JsonNode violations = readViolations(scanNode);
+            rules = new String[violations.size()];
+            ruleImpacts = new String[violations.size()];
+            ruleNodeCounts = new int[violations.size()];
+            Set<String> nodeFingerprints = new LinkedHashSet<>();
+            for (int i = 0; i < violations.size(); i++) {
+                JsonNode violation = violations.get(i);
+                rules[i] = violation.path("id").asText("");
+                ruleImpacts[i] = violation.path("impact").asText("");
+                ruleNodeCounts[i] = violation.path("nodes").size();
+                for (JsonNode node : violation.path("nodes")) {
+                    nodeFingerprints.add(fingerprint(rules[i], node.path("target").asText("")));
+                }
+            }
+            fingerprints = nodeFingerprints.toArray(new String[0]);
+        }
+
+        return new ScanResultSummary(
+                toPagePath(scanNode.getPath()),
+                PropertyUtil.getString(scanNode, "scanId", ""),
+                PropertyUtil.getString(scanNode, "pageUrl", ""),
+                PropertyUtil.getString(scanNode, "pageTitle", ""),
+                PropertyUtil.getLong(scanNode, "scanDate", 0L),
+                PropertyUtil.getString(scanNode, "wcagLevel", "AA"),
+                scanNode.hasProperty("score") ? scanNode.getProperty("score").getDouble() : 0.0,
+                PropertyUtil.getLong(scanNode, "violationCount", 0L).intValue(),
+                PropertyUtil.getLong(scanNode, "passCount", 0L).intValue(),
+                PropertyUtil.getLong(scanNode, "violations_critical", 0L).intValue(),
+                PropertyUtil.getLong(scanNode, "violations_serious", 0L).intValue(),
+                PropertyUtil.getLong(scanNode, "violations_moderate", 0L).intValue(),
+                PropertyUtil.getLong(scanNode, "violations_minor", 0L).intValue(),
+                PropertyUtil.getString(scanNode, "template"),
+                rules,
+                ruleImpacts,
+                ruleNodeCounts,
+                fingerprints);
+    }
+
+    /**
+     * Build the fingerprint of a violating node, identifying the same issue across pages and scans.
+     * Consists of the rule id and a hash of the node's target selector, e.g. color-contrast:3f2a9c01b7d4.
+     *
+     * @param ruleId The axe rule id
+     * @param target The CSS selector of the violating node
+     * @return The fingerprint
+     */
+    public static String fingerprint(String ruleId, String target) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+                    (target != null ? target : "").getBytes(StandardCharsets.UTF_8));
+            StringBuilder fingerprint = new StringBuilder(ruleId).append(':');
+            for (int i = 0; i < 6; i++) {
+                fingerprint.append(String.format("%02x", digest[i]));
+            }
+            return fingerprint.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    /**
+     * Get the rule id part of a fingerprint.
+     */
+    public static String getFingerprintRule(String fingerprint) {
+        int separator = fingerprint.lastIndexOf(':');
+        return separator > 0 ? fingerprint.substring(0, separator) : fingerprint;
+    }
+
+    private static String[] getStrings(Node node, String propertyName) throws RepositoryException {
+        if (!node.hasProperty(propertyName)) {
+            return NO_STRINGS;
+        }
+        Value[] values = node.getProperty(propertyName).getValues();
+        String[] strings = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            strings[i] = values[i].getString();
+        }
+        return strings;
+    }
+
+    private static int[] getInts(Node node, String propertyName) throws RepositoryException {
+        if (!node.hasProperty(propertyName)) {
+            return NO_INTS;
+        }
+        Value[] values = node.getProperty(propertyName).getValues();
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = (int) values[i].getLong();
+        }
+        return ints;
+    }
+
+    private static JsonNode readViolations(Node scanNode) throws RepositoryException {
+        if (scanNode.hasProperty("fullResults")) {
+            try {
+                return objectMapper.readTree(PropertyUtil.getString(scanNode, "fullResults")).path("violations");
+            } catch (IOException e) {
+                // Unreadable full results are treated as having no rule data
+            }
+        }
+        return objectMapper.createArrayNode();
+    }
+
+    private static String[] intern(String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = values[i].intern();
+        }
+        return values;
+    }
+
+    /**
+     * Convert a scan result node path to the path of the scanned page.
+     */
+    public static String toPagePath(String scanNodePath) {
+        return scanNodePath.startsWith(SCAN_RESULTS_PATH) ? scanNodePath.substring(SCAN_RESULTS_PATH.length()) : scanNodePath;
+    }
+
+    /**
+     * Get the number of violations for an impact level.
+     *
+     * @param impact critical, serious, moderate or minor
+     * @return The violation count, 0 for unknown impact levels
+     */
+    public int getImpactCount(String impact) {
+        switch (impact) {
+            case "critical":
+                return criticalCount;
+            case "serious":
+                return seriousCount;
+            case "moderate":
+                return moderateCount;
+            case "minor":
+                return minorCount;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Build the map representation returned by the REST endpoints.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("scanId", scanId);
+        summary.put("pagePath", pagePath);
+        summary.put("pageUrl", pageUrl);
+        summary.put("pageTitle", pageTitle);
+        summary.put("scanDate", scanDate);
+        summary.put("wcagLevel", wcagLevel);
+        summary.put("score", score);
+        summary.put("violationCount", (long) violationCount);
+        summary.put("passCount", (long) passCount);
+        summary.put("criticalCount", (long) criticalCount);
+        summary.put("seriousCount", (long) seriousCount);
+        summary.put("moderateCount", (long) moderateCount);
+        summary.put("minorCount", (long) minorCount);
+        return summary;
+    }
+
+    public String getPagePath() { return pagePath; }
+    public String getScanId() { return scanId; }
+    public String getPageUrl() { return pageUrl; }
+    public String getPageTitle() { return pageTitle; }
+    public long getScanDate() { return scanDate; }
+    public String getWcagLevel() { return wcagLevel; }
+    public double getScore() { return score; }
+    public int getViolationCount() { return violationCount; }
+    public int getPassCount() { return passCount; }
+    public int getCriticalCount() { return criticalCount; }
+    public int getSeriousCount() { return seriousCount; }
+    public int getModerateCount() { return moderateCount; }
+    public int getMinorCount() { return minorCount; }
+    public String getTemplate() { return template; }
+    public int getRuleCount() { return rules.length; }
+    public String getRule(int index) { return rules[index]; }
+    public String getRuleImpact(int index) { return index < ruleImpacts.length ? ruleImpacts[index] : ""; }
+    public int getRuleNodeCount(int index) { return index < ruleNodeCounts.length ? ruleNodeCounts[index] : 0; }
+    public int getFingerprintCount() { return fingerprints.length; }
+    public String getFingerprint(int index) { return fingerprints[index]; }
+}
@@ -0,0 +1,190 @@
+package work.noice.easya11y.services;
+
+import info.magnolia.context.MgnlContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs server-side scans of a set of pages and stores their results.
+ * The pages of a batch are scanned by up to maxConcurrentScans workers; how many of them scan at the same
+ * time is decided by the {@link ScanAdmissionController}, which adapts to how fast the pages load.
+ * Batches submitted from REST endpoints are rescans triggered by a change: they run in the background, one at
+ * a time, in the system context, and wait for admission in the {@link ScanPriority#EVENT} lane.
+ */
+@Singleton
+public class BatchScanService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchScanService.class);
+
+    private final ScanCoordinator coordinator;
+    private final ConfigurationService configurationService;
+    private ExecutorService executor;
+
+    @Inject
+    public BatchScanService(ScanCoordinator coordinator, ConfigurationService configurationService) {
+        this.coordinator = coordinator;
+        this.configurationService = configurationService;
+    }
+
+    /**
+     * Scan the given pages in the background.
+     *
+     * @param description Short description of the batch for the log, e.g. the template id
+     * @param pageUrls Page paths mapped to the URLs to scan
+     * @param wcagLevel The WCAG level to test
+     * @return The batch id
+     */
+    public synchronized String submit(String description, Map<String, String> pageUrls, String wcagLevel) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "easya11y-batch-scan");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        String batchId = UUID.randomUUID().toString();
+        Map<String, String> pages = new LinkedHashMap<>(pageUrls);
+        executor.submit(() -> {
+            try {
+                MgnlContext.doInSystemContext(new MgnlContext.Op<Void, RuntimeException>() {
+                    @Override
+                    public Void exec() {
+                        log.info("Starting batch scan {} ({}) of {} pages", batchId, description, pages.size());
+                        int stored = scanPages(pages, wcagLevel, batchId, ScanPriority.EVENT).size();
+                        log.info("Batch scan {} completed, stored results for {} of {} pages", batchId, stored, pages.size());
+                        return null;
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.error("Error during batch scan {}", batchId, e);
+            }
+        });
+        return batchId;
+    }
+
+    /**
+     * Stop running batches. Called on module stop.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Scan the given pages and store their results.
+     * Pages that fail to scan or store are logged and skipped. Workers scan in the system context.
+     *
+     * @param pageUrls Page paths mapped to the URLs to scan
+     * @param wcagLevel The WCAG level to test
+     * @param runId Id recorded with every result of the batch, for comparing runs
+     * @param priority The lane the scans wait in for admission
+     * @return Store responses by page path, for the pages whose results were stored
+     */
+    public Map<String, Map<String, Object>> scanPages(Map<String, String> pageUrls, String wcagLevel, String runId,
+                                                      ScanPriority priority) {
+        Queue<Map.Entry<String, String>> pending = new ConcurrentLinkedQueue<>(pageUrls.entrySet());
+        Map<String, Map<String, Object>> stored = new ConcurrentHashMap<>();
+        int workers = Math.min(pageUrls.size(), Math.max(1, configurationService.get().getMaxConcurrentScans()));
+        if (workers <= 1) {
+            scanPending(pending, wcagLevel, runId, priority, stored);
+            return inOrder(pageUrls, stored);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "easya11y-batch-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                futures.add(pool.submit(() -> MgnlContext.doInSystemContext(new MgnlContext.Op<Void, RuntimeException>() {
+                    @Override
+                    public Void exec() {
+                        scanPending(pending, wcagLevel, runId, priority, stored);
+                        return null;
+                    }
+                })));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            log.info("Batch scan interrupted after {} pages", stored.size());
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Error in batch scan worker", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return inOrder(pageUrls, stored);
+    }
+
+    /**
+     * Scan pages from the queue until it is empty or the thread is interrupted.
+     */
+    private void scanPending(Queue<Map.Entry<String, String>> pending, String wcagLevel, String runId,
+                             ScanPriority priority, Map<String, Map<String, Object>> stored) {
+        Map.Entry<String, String> entry;
+        while ((entry = pending.poll()) != null) {
+            if (Thread.currentThread().isInterrupted()) {
+                log.info("Batch scan interrupted after {} pages", stored.size());
+                return;
+            }
+            try {
+                Map<String, Object> response = scanPage(entry.getKey(), entry.getValue(), wcagLevel, runId, priority);
+                if (response != null) {
+                    stored.put(entry.getKey(), response);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error scanning page: {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private Map<String, Map<String, Object>> inOrder(Map<String, String> pageUrls, Map<String, Map<String, Object>> stored) {
+        Map<String, Map<String, Object>> ordered = new LinkedHashMap<>();
+        for (String pagePath : pageUrls.keySet()) {
+            if (stored.containsKey(pagePath)) {
+                ordered.put(pagePath, stored.get(pagePath));
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Scan a single page and store its result.
+     *
+     * @param pagePath The page path
+     * @param pageUrl The URL to scan
+     * @param wcagLevel The WCAG level to test
+     * @param runId Id of the run the scan belongs to, or null for a single scan
+     * @param priority The lane the scan waits in for admission
+     * @return The store response, or null if the scan returned an error or the result could not be stored
+     * @see ScanCoordinator#scanPage
+     */
+    public Map<String, Object> scanPage(String pagePath, String pageUrl, String wcagLevel, String runId,
+                                        ScanPriority priority) throws Exception {
+        return coordinator.scanPage(pagePath, pageUrl, wcagLevel, runId, priority);
+    }
+}
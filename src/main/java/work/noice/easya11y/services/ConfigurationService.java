@@ -0,0 +1,120 @@
+package work.noice.easya11y.services;
+
+import info.magnolia.context.MgnlContext;
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import work.noice.easya11y.models.ModuleConfiguration;
+
+import javax.inject.Singleton;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+
+/**
+ * Holds the module configuration as an immutable snapshot.
+ * The snapshot is read once and replaced whenever /configuration in the easya11y workspace changes,
+ * on this or another cluster node, so readers never open a session and always see a consistent set
+ * of settings.
+ */
+@Singleton
+public class ConfigurationService {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigurationService.class);
+    private static final String easya11y_WORKSPACE = "easya11y";
+    private static final String CONFIG_NODE_PATH = "/configuration";
+    private static final long OBSERVATION_DELAY = 500;
+    private static final long OBSERVATION_MAX_DELAY = 5000;
+
+    private volatile ModuleConfiguration configuration;
+    private WorkspaceEventListenerRegistration.Handle listenerHandle;
+
+    /**
+     * Load the configuration and start observing it. Called on module start.
+     */
+    public synchronized void start() {
+        reload();
+        try {
+            // Observe the root so the configuration node being created is seen as well
+            listenerHandle = WorkspaceEventListenerRegistration.observe(easya11y_WORKSPACE, "/", this::onEvent)
+                    .withSubNodes(true)
+                    .withDelay(OBSERVATION_DELAY, OBSERVATION_MAX_DELAY)
+                    .register();
+        } catch (RepositoryException e) {
+            log.error("Could not observe configuration, changes will only be seen after saving through the endpoint", e);
+        }
+    }
+
+    /**
+     * Stop observing the configuration. Called on module stop.
+     */
+    public synchronized void stop() {
+        if (listenerHandle != null) {
+            try {
+                listenerHandle.unregister();
+            } catch (RepositoryException e) {
+                log.warn("Could not unregister configuration observation", e);
+            }
+            listenerHandle = null;
+        }
+        configuration = null;
+    }
+
+    /**
+     * Get the current configuration.
+     *
+     * @return The configuration snapshot, defaults if none is stored
+     */
+    public ModuleConfiguration get() {
+        ModuleConfiguration current = configuration;
+        if (current == null) {
+            synchronized (this) {
+                if (configuration == null) {
+                    reload();
+                }
+                current = configuration;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Re-read the configuration node and replace the snapshot.
+     * Called after saving the configuration so the change applies before observation delivers it.
+     */
+    public void reload() {
+        try {
+            configuration = MgnlContext.doInSystemContext(new MgnlContext.Op<ModuleConfiguration, RepositoryException>() {
+                @Override
+                public ModuleConfiguration exec() throws RepositoryException {
+                    Session session = MgnlContext.getJCRSession(easya11y_WORKSPACE);
+                    return session.nodeExists(CONFIG_NODE_PATH)
+                            ? ModuleConfiguration.fromNode(session.getNode(CONFIG_NODE_PATH))
+                            : ModuleConfiguration.defaults();
+                }
+            });
+        } catch (RepositoryException e) {
+            log.error("Could not read configuration, keeping the previous settings", e);
+            if (configuration == null) {
+                configuration = ModuleConfiguration.defaults();
+            }
+        }
+    }
+
+    private void onEvent(EventIterator events) {
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            try {
+                String path = event.getPath();
+                if (path.equals(CONFIG_NODE_PATH) || path.startsWith(CONFIG_NODE_PATH + "/")) {
+                    log.debug("Configuration changed, reloading");
+                    reload();
+                    return;
+                }
+            } catch (RepositoryException e) {
+                log.warn("Could not read path of configuration event", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package work.noice.easya11y.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import work.noice.easya11y.models.RegressionReport;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Writes regression digests to text files instead of sending mail, for local testing.
+ * Files are written to the directory set in the easya11y.digest.dir system property,
+ * or to easya11y-digests in the temp directory, one file per run.
+ */
+public class FileRegressionDigestSender implements RegressionDigestSender {
+
+    private static final Logger log = LoggerFactory.getLogger(FileRegressionDigestSender.class);
+    private static final String DIRECTORY_PROPERTY = "easya11y.digest.dir";
+
+    @Override
+    public void send(RegressionReport report, List<String> recipients, String from) throws Exception {
+        Path directory = Paths.get(System.getProperty(DIRECTORY_PROPERTY,
+                Paths.get(System.getProperty("java.io.tmpdir"), "easya11y-digests").toString()));
+        Files.createDirectories(directory);
+
+        Path file = directory.resolve("digest-" + report.getRunId() + ".txt");
+        String content = "To: " + String.join(", ", recipients) + "\n"
+                + "From: " + (from != null ? from : "") + "\n\n"
+                + report.toText();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        log.info("Wrote regression digest for run {} to {}", report.getRunId(), file);
+    }
+}
@@ -0,0 +1,51 @@
+package work.noice.easya11y.services;
+
+import info.magnolia.module.mail.MgnlMailFactory;
+import info.magnolia.module.mail.templates.MgnlEmail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import work.noice.easya11y.models.RegressionReport;
+
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Sends regression digests as plain text mail through the Magnolia mail module.
+ */
+public class MailRegressionDigestSender implements RegressionDigestSender {
+
+    private static final Logger log = LoggerFactory.getLogger(MailRegressionDigestSender.class);
+
+    private final MgnlMailFactory mailFactory;
+
+    @Inject
+    public MailRegressionDigestSender(MgnlMailFactory mailFactory) {
+        this.mailFactory = mailFactory;
+    }
+
+    @Override
+    public void send(RegressionReport report, List<String> recipients, String from) throws Exception {
+        if (recipients.isEmpty()) {
+            log.warn("No email recipients configured, regression digest for run {} not sent", report.getRunId());
+            return;
+        }
+
+        MgnlEmail email = mailFactory.getEmailFromType(new HashMap<>(), "text");
+        if (from != null && !from.isEmpty()) {
+            email.setFrom(from);
+        }
+        email.setToList(String.join(",", recipients));
+        email.setSubject(buildSubject(report));
+        email.setBody(report.toText());
+        mailFactory.getEmailHandler().sendMail(email);
+        log.info("Sent regression digest for run {} to {} recipients", report.getRunId(), recipients.size());
+    }
+
+    private String buildSubject(RegressionReport report) {
+        if (report.hasRegressions()) {
+            return "Accessibility regressions on " + report.getRegressions().size() + " pages";
+        }
+        return "Accessibility scan digest: no regressions";
+    }
+}
@@ -0,0 +1,273 @@
+package work.noice.easya11y.services;
+
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled include and exclude rules for page paths, as used for scanPaths and excludePaths.
+ * <ul>
+ *     <li>A path without wildcards, e.g. {@code /travel}, matches the page and all pages below it.
+ *     Such rules are kept in a trie of path segments, so a path is checked in one walk down its segments
+ *     however many rules there are.</li>
+ *     <li>A glob matches whole paths: {@code *} and {@code ?} match within one segment, {@code **} matches
+ *     any number of segments, e.g. {@code /travel/**} matches the pages below /travel but not /travel.</li>
+ *     <li>A rule not starting with {@code /} matches at any depth. Without wildcards it matches the pages of
+ *     that name and all pages below them, e.g. {@code archive} matches /news/archive and /news/archive/2020;
+ *     a glob matches only the pages themselves, e.g. {@code archive*} matches every page whose name starts
+ *     with archive.</li>
+ * </ul>
+ * A path matches if it matches an include rule, or there are none, and no exclude rule.
+ * {@link #findPages} only queries the subtrees the include rules can match.
+ */
+public final class PathFilter {
+
+    private static final String ROOT = "/";
+
+    private final Rules includes;
+    private final Rules excludes;
+    private final List<String> includeRoots;
+
+    private PathFilter(Rules includes, Rules excludes, List<String> includeRoots) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.includeRoots = includeRoots;
+    }
+
+    /**
+     * Compile include and exclude rules.
+     *
+     * @param includePaths Paths and globs to include, all pages if empty
+     * @param excludePaths Paths and globs to exclude
+     * @return The filter
+     */
+    public static PathFilter compile(Collection<String> includePaths, Collection<String> excludePaths) {
+        Rules includes = new Rules();
+        List<String> roots = new ArrayList<>();
+        for (String rule : includePaths) {
+            for (String normalized : normalize(rule)) {
+                includes.add(normalized);
+                roots.add(getLiteralPrefix(normalized));
+            }
+        }
+        Rules excludes = new Rules();
+        for (String rule : excludePaths) {
+            for (String normalized : normalize(rule)) {
+                excludes.add(normalized);
+            }
+        }
+        return new PathFilter(includes, excludes, roots.isEmpty() ? Collections.singletonList(ROOT) : minimizeRoots(roots));
+    }
+
+    /**
+     * Whether the page path passes the filter.
+     */
+    public boolean matches(String path) {
+        return (includes.isEmpty() || includes.matches(path)) && !excludes.matches(path);
+    }
+
+    /**
+     * The subtrees that contain every page the include rules can match, none below another.
+     */
+    public List<String> getIncludeRoots() {
+        return includeRoots;
+    }
+
+    /**
+     * Find the pages matching the filter with a single query restricted to the include roots.
+     *
+     * @param session Session of the website workspace
+     * @return The matching pages, in query order
+     */
+    public List<Node> findPages(Session session) throws RepositoryException {
+        List<Node> pages = new ArrayList<>();
+        StringBuilder query = new StringBuilder("SELECT * FROM [mgnl:page] WHERE ");
+        boolean first = true;
+        for (String root : includeRoots) {
+            if (!session.nodeExists(root)) {
+                continue;
+            }
+            Node rootNode = session.getNode(root);
+            if (NodeUtil.isNodeType(rootNode, NodeTypes.Page.NAME) && matches(root)) {
+                pages.add(rootNode);
+            }
+            query.append(first ? "" : " OR ").append("ISDESCENDANTNODE('").append(root.replace("'", "''")).append("')");
+            first = false;
+        }
+        if (first) {
+            return pages;
+        }
+
+        Query jcrQuery = session.getWorkspace().getQueryManager().createQuery(query.toString(), Query.JCR_SQL2);
+        NodeIterator nodes = jcrQuery.execute().getNodes();
+        while (nodes.hasNext()) {
+            Node node = nodes.nextNode();
+            if (matches(node.getPath())) {
+                pages.add(node);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Turn a rule into absolute rules: a relative literal becomes globs for the pages and their subtrees.
+     */
+    private static List<String> normalize(String rule) {
+        if (rule == null || rule.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        String normalized = rule.trim();
+        while (normalized.length() > 1 && normalized.endsWith(ROOT)) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        if (normalized.startsWith(ROOT)) {
+            return Collections.singletonList(normalized);
+        }
+        if (isGlob(normalized)) {
+            return Collections.singletonList("/**/" + normalized);
+        }
+        return Arrays.asList("/**/" + normalized, "/**/" + normalized + "/**");
+    }
+
+    private static boolean isGlob(String rule) {
+        return rule.indexOf('*') >= 0 || rule.indexOf('?') >= 0;
+    }
+
+    /**
+     * The path of the segments before the first segment with a wildcard.
+     */
+    private static String getLiteralPrefix(String rule) {
+        if (!isGlob(rule)) {
+            return rule;
+        }
+        int wildcard = Math.min(rule.indexOf('*') >= 0 ? rule.indexOf('*') : rule.length(),
+                rule.indexOf('?') >= 0 ? rule.indexOf('?') : rule.length());
+        int segmentStart = rule.lastIndexOf('/', wildcard);
+        return segmentStart <= 0 ? ROOT : rule.substring(0, segmentStart);
+    }
+
+    /**
+     * Drop roots that lie below another root.
+     */
+    private static List<String> minimizeRoots(List<String> roots) {
+        List<String> sorted = new ArrayList<>(roots);
+        sorted.sort(Comparator.comparingInt(String::length));
+        List<String> minimal = new ArrayList<>();
+        for (String root : sorted) {
+            boolean covered = false;
+            for (String ancestor : minimal) {
+                covered |= isSameOrBelow(root, ancestor);
+            }
+            if (!covered) {
+                minimal.add(root);
+            }
+        }
+        return Collections.unmodifiableList(minimal);
+    }
+
+    private static boolean isSameOrBelow(String path, String ancestor) {
+        return ancestor.equals(ROOT) || path.equals(ancestor) || path.startsWith(ancestor + "/");
+    }
+
+    /**
+     * Translate a glob to a regular expression over whole paths.
+     */
+    private static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (c == '*' && glob.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 3;
+                continue;
+            }
+            if (c == '*' && glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 2;
+                continue;
+            }
+            if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+            i++;
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Rules of one kind: literal paths in a segment trie, globs as patterns.
+     */
+    private static class Rules {
+        private final TrieNode trie = new TrieNode();
+        private final List<Pattern> globs = new ArrayList<>();
+        private boolean empty = true;
+
+        void add(String rule) {
+            empty = false;
+            if (isGlob(rule)) {
+                globs.add(toPattern(rule));
+                return;
+            }
+            TrieNode node = trie;
+            for (String segment : rule.split("/")) {
+                if (!segment.isEmpty()) {
+                    node = node.children.computeIfAbsent(segment, key -> new TrieNode());
+                }
+            }
+            node.terminal = true;
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        boolean matches(String path) {
+            TrieNode node = trie;
+            if (node.terminal) {
+                return true;
+            }
+            for (String segment : path.split("/")) {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                node = node.children.get(segment);
+                if (node == null) {
+                    break;
+                }
+                if (node.terminal) {
+                    return true;
+                }
+            }
+            for (Pattern glob : globs) {
+                if (glob.matcher(path).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class TrieNode {
+        private final Map<String, TrieNode> children = new HashMap<>();
+        private boolean terminal;
+    }
+}
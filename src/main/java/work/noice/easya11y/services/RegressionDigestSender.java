@@ -0,0 +1,23 @@
+package work.noice.easya11y.services;
+
+import work.noice.easya11y.models.RegressionReport;
+
+import java.util.List;
+
+/**
+ * Delivers the regression digest of a scan run.
+ * The implementation is chosen in the module descriptor; mail is the default and
+ * {@link FileRegressionDigestSender} writes digests to disk for local testing.
+ */
+public interface RegressionDigestSender {
+
+    /**
+     * Send the digest of a run.
+     *
+     * @param report The regression report of the run
+     * @param recipients Email addresses to send the digest to
+     * @param from Sender address, or null for the mail module default
+     * @throws Exception if the digest could not be delivered
+     */
+    void send(RegressionReport report, List<String> recipients, String from) throws Exception;
+}
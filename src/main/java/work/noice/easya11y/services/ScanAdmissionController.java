@@ -0,0 +1,367 @@
+package work.noice.easya11y.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import work.noice.easya11y.models.ModuleConfiguration;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many server-side scans run at once, since each one starts a headless browser and loads the page
+ * from this instance. The limit adapts to how fast pages load: it grows by one per round of scans whose pages
+ * load within the target time, and halves when a page loads slower or a scan fails, never exceeding the
+ * configured maximum. Scanning then slows down while the instance is busy instead of slowing editors down.
+ * Scans beyond the limit wait in one first-in first-out queue per {@link ScanPriority}. A free slot goes to
+ * the highest lane with scans waiting, so an editor's scan does not wait behind a scheduled batch. To keep
+ * batches moving, a lane that was passed over {@value #MAX_BYPASS} times in a row gets the next slot.
+ * Interactive scans that find no free slot are rejected when their queue is full, so a burst of requests is
+ * answered with a retry hint instead of piling up threads and browsers. Background scans always wait, as they
+ * are already serialized by their caller.
+ */
+@Singleton
+public class ScanAdmissionController {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanAdmissionController.class);
+    private static final long INITIAL_SCAN_MILLIS = 15000;
+    private static final double SCAN_MILLIS_WEIGHT = 0.2;
+    private static final int MAX_BYPASS = 4;
+    private static final double PAGE_LOAD_WEIGHT = 0.2;
+
+    private final ConfigurationService configurationService;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // Guarded by lock
+    private final Map<ScanPriority, Lane> lanes = new EnumMap<>(ScanPriority.class);
+    private int running;
+    private double averageScanMillis = INITIAL_SCAN_MILLIS;
+    private double averagePageLoadMillis;
+    private double adaptiveLimit = 1;
+    private long lastDecreaseAt;
+    private long admittedCount;
+    private long rejectedCount;
+    private long failedCount;
+
+    @Inject
+    public ScanAdmissionController(ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+        for (ScanPriority priority : ScanPriority.values()) {
+            lanes.put(priority, new Lane());
+        }
+    }
+
+    /**
+     * Queue a scan. The caller then waits for admission with {@link #await}; until then the permit
+     * can be promoted to a higher lane.
+     *
+     * @param priority The lane of the scan
+     * @return The permit, to be released when the scan has finished
+     * @throws ScanRejectedException if the scan is interactive, has to wait and the interactive queue is full
+     */
+    public Permit enqueue(ScanPriority priority) throws ScanRejectedException {
+        ModuleConfiguration configuration = configurationService.get();
+        lock.lock();
+        try {
+            Lane lane = lanes.get(priority);
+            int scansAhead = countWaiting(priority);
+            // Only a scan that would have to wait can be rejected, so a queue size of 0 still admits scans into free slots
+            boolean free = running < getLimit(configuration) && countWaiting(ScanPriority.SCHEDULED) == 0;
+            if (!free && priority == ScanPriority.INTERACTIVE
+                    && lane.waiting.size() >= Math.max(0, configuration.getMaxQueuedScans())) {
+                rejectedCount++;
+                int retryAfter = estimateWaitSeconds(scansAhead + 1, getLimit(configuration));
+                throw new ScanRejectedException("Scan queue is full, retry in " + retryAfter + " seconds",
+                        retryAfter, lane.waiting.size());
+            }
+
+            Permit permit = new Permit(priority, free ? 0 : scansAhead + 1);
+            lane.waiting.addLast(permit);
+            dispatch(configuration);
+            return permit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until a queued scan is admitted.
+     *
+     * @param permit The permit returned by {@link #enqueue}
+     * @throws InterruptedException if the thread is interrupted while waiting, the permit is then withdrawn
+     */
+    public void await(Permit permit) throws InterruptedException {
+        lock.lock();
+        try {
+            while (!permit.admitted) {
+                changed.await();
+            }
+        } catch (InterruptedException e) {
+            if (permit.admitted) {
+                running--;
+            } else {
+                lanes.get(permit.priority).waiting.remove(permit);
+            }
+            dispatch(configurationService.get());
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+        if (permit.getQueuePosition() > 0) {
+            log.debug("{} scan admitted after waiting {} ms at queue position {}", permit.priority,
+                    permit.getQueuedMillis(), permit.getQueuePosition());
+        }
+    }
+
+    /**
+     * Move a waiting scan to a higher lane, e.g. when a user asks for a page that a batch has queued.
+     * Has no effect if the scan was already admitted or already has the priority or a higher one.
+     */
+    public void promote(Permit permit, ScanPriority priority) {
+        lock.lock();
+        try {
+            if (permit.admitted || priority.compareTo(permit.priority) >= 0) {
+                return;
+            }
+            lanes.get(permit.priority).waiting.remove(permit);
+            log.debug("Promoting queued scan from {} to {}", permit.priority, priority);
+            permit.priority = priority;
+            lanes.get(priority).waiting.addLast(permit);
+            dispatch(configurationService.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release a permit when its scan has finished, and adapt the limit to how the scan went.
+     *
+     * @param permit The permit of the scan
+     * @param failed Whether the scan failed, which is taken as a sign of an overloaded instance
+     */
+    public void release(Permit permit, boolean failed) {
+        ModuleConfiguration configuration = configurationService.get();
+        lock.lock();
+        try {
+            boolean saturated = running >= getLimit(configuration) || countWaiting(ScanPriority.SCHEDULED) > 0;
+            running--;
+            long duration = System.currentTimeMillis() - permit.getStartedAt();
+            averageScanMillis += SCAN_MILLIS_WEIGHT * (duration - averageScanMillis);
+            if (failed) {
+                failedCount++;
+            }
+            adapt(configuration, permit, failed, saturated);
+            dispatch(configuration);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Additive increase, multiplicative decrease of the limit. Must be called with the lock held.
+     */
+    private void adapt(ModuleConfiguration configuration, Permit permit, boolean failed, boolean saturated) {
+        long pageLoadMillis = permit.getPageLoadMillis();
+        if (pageLoadMillis >= 0) {
+            averagePageLoadMillis += PAGE_LOAD_WEIGHT * (pageLoadMillis - averagePageLoadMillis);
+        }
+        long target = configuration.getTargetPageLoadMillis();
+        if (target <= 0) {
+            return;
+        }
+
+        int ceiling = getCeiling(configuration);
+        if (failed || pageLoadMillis > target) {
+            // Scans started before the last decrease saw the old load, do not decrease for them again
+            if (permit.getStartedAt() > lastDecreaseAt) {
+                int previous = getLimit(configuration);
+                adaptiveLimit = Math.max(1, Math.min(ceiling, adaptiveLimit) / 2);
+                lastDecreaseAt = System.currentTimeMillis();
+                log.info("Lowering concurrent scans from {} to {} after a {}", previous, getLimit(configuration),
+                        failed ? "failed scan" : "page load of " + pageLoadMillis + " ms");
+            }
+        } else if (pageLoadMillis >= 0 && saturated) {
+            // Only a limit that was in use has proven to be fast enough
+            adaptiveLimit = Math.min(ceiling, adaptiveLimit + 1 / adaptiveLimit);
+        }
+    }
+
+    /**
+     * Current load of the scanner.
+     */
+    public Map<String, Object> getStatistics() {
+        ModuleConfiguration configuration = configurationService.get();
+        lock.lock();
+        try {
+            Map<String, Object> laneStatistics = new HashMap<>();
+            int queued = 0;
+            for (Map.Entry<ScanPriority, Lane> entry : lanes.entrySet()) {
+                Map<String, Object> lane = new HashMap<>();
+                lane.put("queued", entry.getValue().waiting.size());
+                lane.put("admittedCount", entry.getValue().admittedCount);
+                laneStatistics.put(entry.getKey().name().toLowerCase(), lane);
+                queued += entry.getValue().waiting.size();
+            }
+
+            Map<String, Object> statistics = new HashMap<>();
+            statistics.put("running", running);
+            statistics.put("queued", queued);
+            statistics.put("lanes", laneStatistics);
+            statistics.put("concurrencyLimit", getLimit(configuration));
+            statistics.put("maxConcurrent", getCeiling(configuration));
+            statistics.put("maxQueued", configuration.getMaxQueuedScans());
+            statistics.put("targetPageLoadMillis", configuration.getTargetPageLoadMillis());
+            statistics.put("averagePageLoadMillis", Math.round(averagePageLoadMillis));
+            statistics.put("averageScanMillis", Math.round(averageScanMillis));
+            statistics.put("admittedCount", admittedCount);
+            statistics.put("rejectedCount", rejectedCount);
+            statistics.put("failedCount", failedCount);
+            return statistics;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Admit waiting scans while there are free slots. Must be called with the lock held.
+     */
+    private void dispatch(ModuleConfiguration configuration) {
+        int limit = getLimit(configuration);
+        boolean admitted = false;
+        while (running < limit) {
+            Permit next = nextPermit();
+            if (next == null) {
+                break;
+            }
+            next.admitted = true;
+            next.start();
+            running++;
+            admittedCount++;
+            lanes.get(next.priority).admittedCount++;
+            admitted = true;
+        }
+        if (admitted) {
+            changed.signalAll();
+        }
+    }
+
+    /**
+     * Take the next scan to admit: the oldest scan of the highest lane, unless a lower lane was passed
+     * over too often. Must be called with the lock held.
+     */
+    private Permit nextPermit() {
+        ScanPriority chosen = null;
+        for (ScanPriority priority : ScanPriority.values()) {
+            Lane lane = lanes.get(priority);
+            if (lane.waiting.isEmpty()) {
+                lane.bypassed = 0;
+            } else if (chosen == null) {
+                chosen = priority;
+            } else if (lane.bypassed >= MAX_BYPASS) {
+                chosen = priority;
+                break;
+            }
+        }
+        if (chosen == null) {
+            return null;
+        }
+
+        for (ScanPriority priority : ScanPriority.values()) {
+            Lane lane = lanes.get(priority);
+            if (priority == chosen) {
+                lane.bypassed = 0;
+            } else if (priority.compareTo(chosen) > 0 && !lane.waiting.isEmpty()) {
+                lane.bypassed++;
+            }
+        }
+        return lanes.get(chosen).waiting.removeFirst();
+    }
+
+    /**
+     * Number of scans waiting in the lane and in higher lanes. Must be called with the lock held.
+     */
+    private int countWaiting(ScanPriority priority) {
+        int count = 0;
+        for (Map.Entry<ScanPriority, Lane> entry : lanes.entrySet()) {
+            if (entry.getKey().compareTo(priority) <= 0) {
+                count += entry.getValue().waiting.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of scans that may run now. Must be called with the lock held.
+     */
+    private int getLimit(ModuleConfiguration configuration) {
+        int ceiling = getCeiling(configuration);
+        if (configuration.getTargetPageLoadMillis() <= 0) {
+            return ceiling;
+        }
+        return Math.max(1, Math.min(ceiling, (int) adaptiveLimit));
+    }
+
+    private int getCeiling(ModuleConfiguration configuration) {
+        return Math.max(1, configuration.getMaxConcurrentScans());
+    }
+
+    private int estimateWaitSeconds(int scansAhead, int limit) {
+        return (int) Math.max(1, Math.ceil(scansAhead * averageScanMillis / limit / 1000));
+    }
+
+    /**
+     * Scans waiting at one priority.
+     */
+    private static class Lane {
+        private final Deque<Permit> waiting = new ArrayDeque<>();
+        private int bypassed;
+        private long admittedCount;
+    }
+
+    /**
+     * Admission of one scan.
+     */
+    public static class Permit {
+        private final int queuePosition;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long startedAt;
+        private volatile long pageLoadMillis = -1;
+        // Guarded by the controller's lock
+        private ScanPriority priority;
+        private boolean admitted;
+
+        Permit(ScanPriority priority, int queuePosition) {
+            this.priority = priority;
+            this.queuePosition = queuePosition;
+        }
+
+        void start() {
+            startedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * Position in the queue when the scan arrived, counting the scans of its own and higher lanes,
+         * 0 if it started right away.
+         */
+        public int getQueuePosition() { return queuePosition; }
+        public long getQueuedMillis() { return startedAt - createdAt; }
+        public long getStartedAt() { return startedAt; }
+
+        /**
+         * Record how long the scanned page took to load, see {@link ServerSideAccessibilityScanner#scanUrl}.
+         */
+        public void recordPageLoad(long millis) { pageLoadMillis = millis; }
+
+        /**
+         * Page load time in milliseconds, -1 if the page was not loaded.
+         */
+        public long getPageLoadMillis() { return pageLoadMillis; }
+    }
+}
@@ -0,0 +1,271 @@
+package work.noice.easya11y.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.jcr.util.PropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import work.noice.easya11y.models.ScanResultSummary;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs server-side scans of single pages and stores their results.
+ * Scans are single-flight per page and WCAG level: a request for a page that is already being
+ * scanned at the same level waits for that scan and shares its result instead of starting a second
+ * browser and writing the same result node again. A request of higher priority that joins a scan still
+ * waiting for admission moves that scan to its own lane. A scan of a run that joins a single scan records
+ * the result under its run id, so the page stays part of the run; if the result is already being stored,
+ * the run scans the page again once that scan has finished. On-demand scans can also be answered from a stored
+ * result while the page is unchanged, see {@link #findFreshResult}.
+ */
+@Singleton
+public class ScanCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanCoordinator.class);
+    private static final String WEBSITE_WORKSPACE = "website";
+    private static final String SCAN_RESULTS_WORKSPACE = "easya11y";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ServerSideAccessibilityScanner scanner;
+    private final ScanResultIndex scanIndex;
+    private final ConfigurationService configurationService;
+    private final ScanAdmissionController admissionController;
+    private final ScanResultStore resultStore;
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    @Inject
+    public ScanCoordinator(ServerSideAccessibilityScanner scanner, ScanResultIndex scanIndex,
+                           ConfigurationService configurationService, ScanAdmissionController admissionController,
+                           ScanResultStore resultStore) {
+        this.scanner = scanner;
+        this.scanIndex = scanIndex;
+        this.configurationService = configurationService;
+        this.admissionController = admissionController;
+        this.resultStore = resultStore;
+    }
+
+    /**
+     * Find a stored result that is still valid for the page, so an on-demand scan can be skipped.
+     * A result is fresh if it was scanned at the same level, within the configured maximum age, and no
+     * later than the last modification of the page or of any of its areas and components.
+     *
+     * @param pagePath The page path
+     * @param wcagLevel The WCAG level to test
+     * @return The stored result, or null if the page has to be scanned
+     */
+    public ScanResultSummary findFreshResult(String pagePath, String wcagLevel) throws RepositoryException {
+        long maxAge = configurationService.get().getScanCacheMaxAge();
+        if (maxAge <= 0) {
+            return null;
+        }
+
+        scanIndex.ensureLoaded(MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE));
+        ScanResultSummary summary = scanIndex.get(pagePath);
+        if (summary == null || !wcagLevel.equals(summary.getWcagLevel())
+                || System.currentTimeMillis() - summary.getScanDate() > maxAge) {
+            return null;
+        }
+
+        Session websiteSession = MgnlContext.getJCRSession(WEBSITE_WORKSPACE);
+        if (!websiteSession.nodeExists(pagePath)) {
+            return null;
+        }
+        return getContentLastModified(websiteSession.getNode(pagePath)) <= summary.getScanDate() ? summary : null;
+    }
+
+    /**
+     * Latest modification of a page and its content, without descending into subpages.
+     * Long.MAX_VALUE if a node has no modification date, so such pages are never taken as unchanged.
+     */
+    static long getContentLastModified(Node node) throws RepositoryException {
+        Calendar lastModified = NodeTypes.LastModified.getLastModified(node);
+        long latest = lastModified != null ? lastModified.getTimeInMillis() : Long.MAX_VALUE;
+        NodeIterator children = node.getNodes();
+        while (children.hasNext() && latest != Long.MAX_VALUE) {
+            Node child = children.nextNode();
+            if (NodeUtil.isNodeType(child, NodeTypes.Area.NAME) || NodeUtil.isNodeType(child, NodeTypes.Component.NAME)) {
+                latest = Math.max(latest, getContentLastModified(child));
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Scan a single page and store its result, or join the scan of the page already in flight.
+     *
+     * @param pagePath The page path
+     * @param pageUrl The URL to scan
+     * @param wcagLevel The WCAG level to test
+     * @param runId Id of the run the scan belongs to, or null for a single scan
+     * @param priority The lane the scan waits in for admission, see {@link ScanAdmissionController}
+     * @return The store response, with shared set to true if it came from a scan started by another request,
+     *         or null if the scan returned an error or the result could not be stored
+     * @throws ScanRejectedException if the scan is interactive and the scan queue is full
+     */
+    public Map<String, Object> scanPage(String pagePath, String pageUrl, String wcagLevel, String runId,
+                                        ScanPriority priority) throws Exception {
+        String key = pagePath + "|" + wcagLevel;
+        Flight flight = new Flight(runId);
+        Flight existing;
+        while ((existing = inFlight.putIfAbsent(key, flight)) != null) {
+            if (existing.join(runId)) {
+                log.info("Scan of page {} at level {} already running, waiting for its result", pagePath, wcagLevel);
+                ScanAdmissionController.Permit permit = existing.permit;
+                if (permit != null) {
+                    admissionController.promote(permit, priority);
+                }
+                return share(existing.result);
+            }
+            log.info("Scan of page {} at level {} is storing its result for another run, scanning again after it",
+                    pagePath, wcagLevel);
+            try {
+                existing.result.get();
+            } catch (ExecutionException e) {
+                // The run scans the page itself regardless of how the other scan ended
+            }
+        }
+
+        Map<String, Object> result;
+        try {
+            result = scanAndStore(pagePath, pageUrl, wcagLevel, priority, flight);
+        } catch (Exception | Error e) {
+            inFlight.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        // Leave the flight before completing it, so a run waiting to scan again does not find it
+        inFlight.remove(key, flight);
+        flight.result.complete(result);
+        return result;
+    }
+
+    /**
+     * Whether a scan of the page at the level is in flight.
+     */
+    public boolean isScanning(String pagePath, String wcagLevel) {
+        return inFlight.containsKey(pagePath + "|" + wcagLevel);
+    }
+
+    private Map<String, Object> share(CompletableFuture<Map<String, Object>> flight) throws Exception {
+        try {
+            Map<String, Object> result = flight.get();
+            if (result == null) {
+                return null;
+            }
+            Map<String, Object> shared = new HashMap<>(result);
+            shared.put("shared", true);
+            return shared;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private Map<String, Object> scanAndStore(String pagePath, String pageUrl, String wcagLevel,
+                                             ScanPriority priority, Flight flight) throws Exception {
+        ScanAdmissionController.Permit permit = admissionController.enqueue(priority);
+        flight.permit = permit;
+        admissionController.await(permit);
+        JsonNode axeResults = null;
+        try {
+            axeResults = scanner.scanUrl(pageUrl, wcagLevel, permit::recordPageLoad);
+        } finally {
+            admissionController.release(permit, axeResults == null || axeResults.has("error"));
+        }
+        if (axeResults.has("error")) {
+            log.warn("Scan of page {} returned an error: {}", pagePath, axeResults.get("error").asText());
+            return null;
+        }
+
+        Map<String, Object> scanData = new HashMap<>();
+        scanData.put("scanId", UUID.randomUUID().toString());
+        scanData.put("runId", flight.startStoring());
+        scanData.put("pagePath", pagePath);
+        scanData.put("pageUrl", pageUrl);
+        scanData.put("pageTitle", getPageTitle(pagePath));
+        scanData.put("wcagLevel", wcagLevel);
+        scanData.put("score", scanner.calculateScore(axeResults));
+        scanData.put("axeResults", axeResults);
+
+        Map<String, Object> result;
+        try {
+            result = resultStore.store(objectMapper.valueToTree(scanData));
+        } catch (IllegalArgumentException | RepositoryException | IOException e) {
+            log.error("Could not store scan results for page: {}", pagePath, e);
+            return null;
+        }
+        result.put("queuePosition", permit.getQueuePosition());
+        result.put("queuedMillis", permit.getQueuedMillis());
+        return result;
+    }
+
+    private String getPageTitle(String pagePath) {
+        String pageTitle = pagePath.substring(pagePath.lastIndexOf('/') + 1);
+        try {
+            Session websiteSession = MgnlContext.getJCRSession(WEBSITE_WORKSPACE);
+            if (websiteSession.nodeExists(pagePath)) {
+                pageTitle = PropertyUtil.getString(websiteSession.getNode(pagePath), "title", pageTitle);
+            }
+        } catch (RepositoryException e) {
+            log.warn("Could not get page title for: {}", pagePath);
+        }
+        return pageTitle;
+    }
+
+    /**
+     * A scan in flight, with its admission permit once it is queued and the run its result is stored for.
+     */
+    private static class Flight {
+        private final CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+        private volatile ScanAdmissionController.Permit permit;
+        // Guarded by this
+        private String runId;
+        private boolean storing;
+
+        Flight(String runId) {
+            this.runId = runId;
+        }
+
+        /**
+         * Whether a request of the run can share the result: it is a single scan or of the same run,
+         * or the result is not stored yet and can still be recorded under the run.
+         */
+        synchronized boolean join(String joiningRunId) {
+            if (joiningRunId == null || joiningRunId.equals(runId)) {
+                return true;
+            }
+            if (runId == null && !storing) {
+                runId = joiningRunId;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Take the run id to store the result under; no run can join after this.
+         */
+        synchronized String startStoring() {
+            storing = true;
+            return runId;
+        }
+    }
+}
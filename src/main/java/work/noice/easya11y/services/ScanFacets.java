@@ -0,0 +1,209 @@
+package work.noice.easya11y.services;
+
+import work.noice.easya11y.models.ScanResultSummary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed violation counters grouped by axe rule, impact and template.
+ * Maintained by {@link ScanResultIndex} as summaries are added and removed, so aggregations
+ * are answered from the counters instead of reading the full results of every page.
+ * Not thread-safe on its own; the index guards all access.
+ */
+class ScanFacets {
+
+    private static final String[] IMPACTS = {"critical", "serious", "moderate", "minor"};
+    private static final String NO_TEMPLATE = "(none)";
+
+    private final Map<String, Bucket> byRule = new HashMap<>();
+    private final Map<String, Bucket> byTemplate = new HashMap<>();
+    private final Map<String, Bucket> byImpact = new LinkedHashMap<>();
+
+    ScanFacets() {
+        clear();
+    }
+
+    void clear() {
+        byRule.clear();
+        byTemplate.clear();
+        byImpact.clear();
+        for (String impact : IMPACTS) {
+            byImpact.put(impact, new Bucket(impact, Kind.IMPACT));
+        }
+    }
+
+    void add(ScanResultSummary summary) {
+        apply(summary, 1);
+    }
+
+    void remove(ScanResultSummary summary) {
+        apply(summary, -1);
+    }
+
+    /**
+     * Rules ordered by number of affected pages, most widespread first.
+     */
+    List<Map<String, Object>> rules(int limit) {
+        return toList(byRule.values(), Comparator.comparingLong(Bucket::getPages).reversed(), limit);
+    }
+
+    /**
+     * Templates ordered by average score, worst first.
+     */
+    List<Map<String, Object>> templates(int limit) {
+        return toList(byTemplate.values(), Comparator.comparingDouble(Bucket::getAverageScore), limit);
+    }
+
+    /**
+     * Impact levels from critical to minor.
+     */
+    List<Map<String, Object>> impacts() {
+        return toList(byImpact.values(), null, 0);
+    }
+
+    /**
+     * Group summaries by their page path prefix, cut after the given number of path segments.
+     * Computed on demand since the grouping depth is chosen per request.
+     *
+     * @param summaries The summaries to group
+     * @param depth Number of path segments in the prefix
+     * @param limit Maximum number of groups, 0 or less for all
+     * @return Groups ordered by average score, worst first
+     */
+    static List<Map<String, Object>> paths(Iterable<ScanResultSummary> summaries, int depth, int limit) {
+        Map<String, Bucket> byPath = new HashMap<>();
+        for (ScanResultSummary summary : summaries) {
+            byPath.computeIfAbsent(pathPrefix(summary.getPagePath(), depth), key -> new Bucket(key, Kind.GROUP))
+                    .addPage(summary, 1);
+        }
+        return toList(byPath.values(), Comparator.comparingDouble(Bucket::getAverageScore), limit);
+    }
+
+    private static String pathPrefix(String pagePath, int depth) {
+        int end = 0;
+        for (int i = 0; i < depth; i++) {
+            int next = pagePath.indexOf('/', end + 1);
+            if (next < 0) {
+                return pagePath;
+            }
+            end = next;
+        }
+        return pagePath.substring(0, end);
+    }
+
+    private void apply(ScanResultSummary summary, int sign) {
+        String template = summary.getTemplate() != null ? summary.getTemplate() : NO_TEMPLATE;
+        byTemplate.computeIfAbsent(template, key -> new Bucket(key, Kind.GROUP)).addPage(summary, sign);
+        removeIfEmpty(byTemplate, template);
+
+        for (String impact : IMPACTS) {
+            int count = summary.getImpactCount(impact);
+            if (count > 0) {
+                Bucket bucket = byImpact.get(impact);
+                bucket.pages += sign;
+                bucket.violations += sign * count;
+            }
+        }
+
+        for (int i = 0; i < summary.getRuleCount(); i++) {
+            String rule = summary.getRule(i);
+            Bucket bucket = byRule.computeIfAbsent(rule, key -> new Bucket(key, Kind.RULE));
+            bucket.impact = summary.getRuleImpact(i);
+            bucket.pages += sign;
+            bucket.nodes += sign * summary.getRuleNodeCount(i);
+            removeIfEmpty(byRule, rule);
+        }
+    }
+
+    private void removeIfEmpty(Map<String, Bucket> buckets, String key) {
+        if (buckets.get(key).pages <= 0) {
+            buckets.remove(key);
+        }
+    }
+
+    private static List<Map<String, Object>> toList(Collection<Bucket> buckets, Comparator<Bucket> order, int limit) {
+        List<Bucket> sorted = new ArrayList<>(buckets);
+        if (order != null) {
+            sorted.sort(order);
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Bucket bucket : sorted) {
+            if (limit > 0 && result.size() == limit) {
+                break;
+            }
+            result.add(bucket.toMap());
+        }
+        return result;
+    }
+
+    private enum Kind { RULE, IMPACT, GROUP }
+
+    /**
+     * Counters for one facet value.
+     */
+    private static class Bucket {
+        private final String key;
+        private final Kind kind;
+        private String impact;
+        private long pages;
+        private long nodes;
+        private long violations;
+        private double scoreSum;
+        private long critical;
+        private long serious;
+        private long moderate;
+        private long minor;
+
+        Bucket(String key, Kind kind) {
+            this.key = key;
+            this.kind = kind;
+        }
+
+        void addPage(ScanResultSummary summary, int sign) {
+            pages += sign;
+            violations += sign * summary.getViolationCount();
+            scoreSum += sign * summary.getScore();
+            critical += sign * summary.getCriticalCount();
+            serious += sign * summary.getSeriousCount();
+            moderate += sign * summary.getModerateCount();
+            minor += sign * summary.getMinorCount();
+        }
+
+        long getPages() {
+            return pages;
+        }
+
+        double getAverageScore() {
+            return pages > 0 ? scoreSum / pages : 0.0;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("key", key);
+            map.put("pageCount", pages);
+            switch (kind) {
+                case RULE:
+                    map.put("impact", impact);
+                    map.put("nodeCount", nodes);
+                    break;
+                case IMPACT:
+                    map.put("violationCount", violations);
+                    break;
+                default:
+                    map.put("averageScore", Math.round(getAverageScore() * 10) / 10.0);
+                    map.put("violationCount", violations);
+                    map.put("criticalCount", critical);
+                    map.put("seriousCount", serious);
+                    map.put("moderateCount", moderate);
+                    map.put("minorCount", minor);
+            }
+            return map;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package work.noice.easya11y.services;
+
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.PropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import work.noice.easya11y.models.ScanResultSummary;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Orders the pages of a batch so the most useful scans run first, and a batch limited to a number of pages
+ * covers the pages that need a scan most. Pages are taken in this order:
+ * <ol>
+ *     <li>pages without a result at the WCAG level, most visited first</li>
+ *     <li>pages modified since their last scan, most visited first, then most recently modified</li>
+ *     <li>all other pages, most visited first, then oldest scan, then lowest previous score</li>
+ * </ol>
+ * Whether a page was modified is decided by its own {@value #LAST_MODIFIED_PROPERTY} date, without reading
+ * its areas and components; a page without the date is not known to be modified and is ordered with the others.
+ * How often a page is visited is read from its optional {@value #TRAFFIC_WEIGHT_PROPERTY} property,
+ * e.g. written by an analytics import. Pages without it have weight 0.
+ */
+@Singleton
+public class ScanPlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanPlanner.class);
+    private static final String WEBSITE_WORKSPACE = "website";
+    private static final String SCAN_RESULTS_WORKSPACE = "easya11y";
+    public static final String TRAFFIC_WEIGHT_PROPERTY = "trafficWeight";
+    private static final String LAST_MODIFIED_PROPERTY = "mgnl:lastModified";
+
+    private static final int NEVER_SCANNED = 0;
+    private static final int MODIFIED = 1;
+    private static final int UNCHANGED = 2;
+
+    private static final Comparator<Candidate> PRIORITY = Comparator
+            .comparingInt(Candidate::getTier)
+            .thenComparing(Comparator.comparingDouble(Candidate::getTrafficWeight).reversed())
+            .thenComparing(Comparator.comparingLong(Candidate::getRecency).reversed())
+            .thenComparingLong(Candidate::getScanDate)
+            .thenComparingDouble(Candidate::getScore)
+            .thenComparing(Candidate::getPagePath);
+
+    private final ScanResultIndex scanIndex;
+
+    @Inject
+    public ScanPlanner(ScanResultIndex scanIndex) {
+        this.scanIndex = scanIndex;
+    }
+
+    /**
+     * Order pages for scanning.
+     *
+     * @param pagePaths The pages to scan
+     * @param wcagLevel The WCAG level the pages will be scanned at
+     * @param maxPages Maximum number of pages to return, 0 for all
+     * @return The page paths, most important first
+     */
+    public List<String> prioritize(Collection<String> pagePaths, String wcagLevel, int maxPages) throws RepositoryException {
+        scanIndex.ensureLoaded(MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE));
+        Session websiteSession = MgnlContext.getJCRSession(WEBSITE_WORKSPACE);
+
+        List<Candidate> candidates = new ArrayList<>(pagePaths.size());
+        for (String pagePath : pagePaths) {
+            candidates.add(toCandidate(websiteSession, pagePath, wcagLevel));
+        }
+        candidates.sort(PRIORITY);
+
+        int count = maxPages > 0 ? Math.min(maxPages, candidates.size()) : candidates.size();
+        List<String> ordered = new ArrayList<>(count);
+        int neverScanned = 0;
+        int modified = 0;
+        for (Candidate candidate : candidates.subList(0, count)) {
+            ordered.add(candidate.getPagePath());
+            if (candidate.getTier() == NEVER_SCANNED) {
+                neverScanned++;
+            } else if (candidate.getTier() == MODIFIED) {
+                modified++;
+            }
+        }
+        log.info("Planned {} of {} pages: {} never scanned, {} modified since their last scan",
+                count, candidates.size(), neverScanned, modified);
+        return ordered;
+    }
+
+    private Candidate toCandidate(Session websiteSession, String pagePath, String wcagLevel) throws RepositoryException {
+        ScanResultSummary summary = scanIndex.get(pagePath);
+        Node page = websiteSession.nodeExists(pagePath) ? websiteSession.getNode(pagePath) : null;
+        double trafficWeight = page != null ? getTrafficWeight(page, pagePath) : 0;
+
+        if (summary == null || !wcagLevel.equals(summary.getWcagLevel())) {
+            return new Candidate(pagePath, NEVER_SCANNED, trafficWeight, 0, 0, 0);
+        }
+        // Only the page's own date is read, pages without one are treated as unchanged
+        Calendar lastModified = page != null ? PropertyUtil.getDate(page, LAST_MODIFIED_PROPERTY) : null;
+        if (lastModified != null && lastModified.getTimeInMillis() > summary.getScanDate()) {
+            return new Candidate(pagePath, MODIFIED, trafficWeight,
+                    lastModified.getTimeInMillis(), summary.getScanDate(), summary.getScore());
+        }
+        return new Candidate(pagePath, UNCHANGED, trafficWeight, 0, summary.getScanDate(), summary.getScore());
+    }
+
+    private double getTrafficWeight(Node page, String pagePath) {
+        String value = PropertyUtil.getString(page, TRAFFIC_WEIGHT_PROPERTY);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring invalid {} '{}' of page {}", TRAFFIC_WEIGHT_PROPERTY, value, pagePath);
+            return 0;
+        }
+    }
+
+    /**
+     * A page with what is known about its last scan.
+     */
+    private static class Candidate {
+        private final String pagePath;
+        private final int tier;
+        private final double trafficWeight;
+        private final long recency;
+        private final long scanDate;
+        private final double score;
+
+        Candidate(String pagePath, int tier, double trafficWeight, long recency, long scanDate, double score) {
+            this.pagePath = pagePath;
+            this.tier = tier;
+            this.trafficWeight = trafficWeight;
+            this.recency = recency;
+            this.scanDate = scanDate;
+            this.score = score;
+        }
+
+        String getPagePath() { return pagePath; }
+        int getTier() { return tier; }
+        double getTrafficWeight() { return trafficWeight; }
+        long getRecency() { return recency; }
+        long getScanDate() { return scanDate; }
+        double getScore() { return score; }
+    }
+}
@@ -0,0 +1,17 @@
+package work.noice.easya11y.services;
+
+/**
+ * Priority lane of a server-side scan, highest first.
+ * Waiting scans are admitted from the highest lane that has scans queued, see {@link ScanAdmissionController}.
+ */
+public enum ScanPriority {
+
+    /** A user is waiting for the result, e.g. an editor scanning the page they work on. */
+    INTERACTIVE,
+
+    /** A rescan triggered by a change, e.g. of a template used by many pages. */
+    EVENT,
+
+    /** Scheduled or command-driven batch scans. */
+    SCHEDULED
+}
@@ -0,0 +1,26 @@
+package work.noice.easya11y.services;
+
+/**
+ * Thrown when a scan is not admitted because the scan queue is full.
+ */
+public class ScanRejectedException extends Exception {
+
+    private final int retryAfterSeconds;
+    private final int queueLength;
+
+    public ScanRejectedException(String message, int retryAfterSeconds, int queueLength) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.queueLength = queueLength;
+    }
+
+    /**
+     * Estimated number of seconds after which the queue has room again.
+     */
+    public int getRetryAfterSeconds() { return retryAfterSeconds; }
+
+    /**
+     * Number of scans waiting when the scan was rejected.
+     */
+    public int getQueueLength() { return queueLength; }
+}
@@ -0,0 +1,597 @@
+package work.noice.easya11y.services;
+
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import work.noice.easya11y.models.ScanResultSummary;
+
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of the latest scan result summary of every scanned page.
+ * Loaded when the module starts and kept current through JCR observation on /scanResults,
+ * so listing, filtering and exporting never re-read the scan result nodes.
+ * Summaries are also kept ordered by scan date (newest first) and page path, which backs keyset pagination.
+ * Reverse indexes from axe rule id and violation fingerprint to the affected pages answer
+ * "which pages still fail this rule" without reading full results.
+ */
+@Singleton
+public class ScanResultIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanResultIndex.class);
+    private static final String SCAN_RESULTS_WORKSPACE = "easya11y";
+    private static final String SCAN_RESULTS_PATH = "/scanResults";
+    private static final long OBSERVATION_DELAY = 500;
+    private static final long OBSERVATION_MAX_DELAY = 5000;
+
+    private static final Comparator<ScanResultSummary> SCAN_DATE_ORDER =
+            Comparator.comparingLong(ScanResultSummary::getScanDate).reversed()
+                    .thenComparing(ScanResultSummary::getPagePath);
+
+    private final Map<String, ScanResultSummary> entries = new ConcurrentHashMap<>();
+    private final NavigableSet<ScanResultSummary> byScanDate = new ConcurrentSkipListSet<>(SCAN_DATE_ORDER);
+    private final ScanFacets facets = new ScanFacets();
+    // Page paths by rule id, and by rule id and fingerprint; guarded by this
+    private final Map<String, NavigableSet<String>> pagesByRule = new HashMap<>();
+    private final Map<String, Map<String, NavigableSet<String>>> pagesByFingerprint = new HashMap<>();
+    private volatile boolean loaded;
+    private WorkspaceEventListenerRegistration.Handle listenerHandle;
+
+    /**
+     * Load the index and start observing the scan results. Called on module start.
+     */
+    public synchronized void start() {
+        try {
+            MgnlContext.doInSystemContext(new MgnlContext.Op<Void, RepositoryException>() {
+                @Override
+                public Void exec() throws RepositoryException {
+                    load(MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE));
+                    return null;
+                }
+            });
+            listenerHandle = WorkspaceEventListenerRegistration.observe(SCAN_RESULTS_WORKSPACE, SCAN_RESULTS_PATH, this::onEvent)
+                    .withSubNodes(true)
+                    .withDelay(OBSERVATION_DELAY, OBSERVATION_MAX_DELAY)
+                    .register();
+        } catch (RepositoryException e) {
+            log.error("Could not initialize scan result index, it will be loaded on first access", e);
+        }
+    }
+
+    /**
+     * Stop observing the scan results. Called on module stop.
+     */
+    public synchronized void stop() {
+        if (listenerHandle != null) {
+            try {
+                listenerHandle.unregister();
+            } catch (RepositoryException e) {
+                log.warn("Could not unregister scan result observation", e);
+            }
+            listenerHandle = null;
+        }
+        loaded = false;
+        entries.clear();
+        byScanDate.clear();
+        facets.clear();
+        pagesByRule.clear();
+        pagesByFingerprint.clear();
+    }
+
+    /**
+     * Load the index from the given session if it has not been loaded yet.
+     *
+     * @param session Session for the easya11y workspace
+     */
+    public void ensureLoaded(Session session) throws RepositoryException {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    load(session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the summary for a page.
+     *
+     * @param pagePath The page path
+     * @return The summary or null if the page has not been scanned
+     */
+    public ScanResultSummary get(String pagePath) {
+        return entries.get(pagePath);
+    }
+
+    /**
+     * Get all indexed summaries, in no particular order.
+     */
+    public Collection<ScanResultSummary> getAll() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Find all summaries matching the filter, sorted by scan date descending.
+     *
+     * @param filter The filter
+     * @return Matching summaries
+     */
+    public List<ScanResultSummary> find(Filter filter) {
+        List<ScanResultSummary> matches = new ArrayList<>();
+        for (ScanResultSummary summary : byScanDate) {
+            if (filter.matches(summary)) {
+                matches.add(summary);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Lazily stream the summaries matching the filter, sorted by scan date descending.
+     * Nothing is copied, so this suits exports over the whole index.
+     *
+     * @param filter The filter
+     * @return Stream of matching summaries
+     */
+    public Stream<ScanResultSummary> stream(Filter filter) {
+        return byScanDate.stream().filter(filter::matches);
+    }
+
+    /**
+     * Get one page of summaries matching the filter, sorted by scan date descending.
+     * Pages are addressed by a cursor returned with the previous page, so deep pages
+     * start right after the cursor instead of skipping all preceding entries.
+     *
+     * @param filter The filter
+     * @param cursor Cursor returned as next cursor of the previous page, or null for the first page
+     * @param offset Number of matches to skip after the cursor position
+     * @param limit Maximum number of summaries to return, 0 or less for all
+     * @return The page
+     */
+    public ResultPage page(Filter filter, String cursor, int offset, int limit) {
+        NavigableSet<ScanResultSummary> candidates = byScanDate;
+        ScanResultSummary position = decodeCursor(cursor);
+        if (position != null) {
+            candidates = byScanDate.tailSet(position, false);
+        }
+
+        List<ScanResultSummary> items = new ArrayList<>();
+        int skipped = 0;
+        boolean hasMore = false;
+        Iterator<ScanResultSummary> iterator = candidates.iterator();
+        while (iterator.hasNext()) {
+            ScanResultSummary summary = iterator.next();
+            if (!filter.matches(summary)) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            if (limit > 0 && items.size() == limit) {
+                hasMore = true;
+                break;
+            }
+            items.add(summary);
+        }
+
+        String nextCursor = hasMore ? encodeCursor(items.get(items.size() - 1)) : null;
+        return new ResultPage(items, count(filter), nextCursor);
+    }
+
+    /**
+     * Count the summaries matching the filter.
+     */
+    public int count(Filter filter) {
+        if (filter.isEmpty()) {
+            return entries.size();
+        }
+        int count = 0;
+        for (ScanResultSummary summary : entries.values()) {
+            if (filter.matches(summary)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Violated axe rules with the number of affected pages and nodes, most widespread first.
+     *
+     * @param limit Maximum number of rules, 0 or less for all
+     */
+    public synchronized List<Map<String, Object>> getRuleFacets(int limit) {
+        return facets.rules(limit);
+    }
+
+    /**
+     * Score and violation totals per page template, lowest average score first.
+     *
+     * @param limit Maximum number of templates, 0 or less for all
+     */
+    public synchronized List<Map<String, Object>> getTemplateFacets(int limit) {
+        return facets.templates(limit);
+    }
+
+    /**
+     * Number of affected pages and violations per impact level.
+     */
+    public synchronized List<Map<String, Object>> getImpactFacets() {
+        return facets.impacts();
+    }
+
+    /**
+     * Score and violation totals per path prefix, lowest average score first.
+     *
+     * @param depth Number of path segments in the prefix
+     * @param limit Maximum number of groups, 0 or less for all
+     */
+    public List<Map<String, Object>> getPathFacets(int depth, int limit) {
+        return ScanFacets.paths(entries.values(), depth, limit);
+    }
+
+    /**
+     * Get one page of the pages currently violating a rule, ordered by page path.
+     *
+     * @param ruleId The axe rule id
+     * @param fingerprint Optional fingerprint to only return pages with that specific violating node
+     * @param cursor Cursor returned as next cursor of the previous page, or null for the first page
+     * @param limit Maximum number of summaries to return, 0 or less for all
+     * @return The page, empty if no page violates the rule
+     */
+    public synchronized ResultPage findByRule(String ruleId, String fingerprint, String cursor, int limit) {
+        NavigableSet<String> paths;
+        if (StringUtils.isNotBlank(fingerprint)) {
+            Map<String, NavigableSet<String>> byFingerprint = pagesByFingerprint.get(ruleId);
+            paths = byFingerprint != null ? byFingerprint.get(fingerprint) : null;
+        } else {
+            paths = pagesByRule.get(ruleId);
+        }
+        if (paths == null) {
+            return new ResultPage(Collections.emptyList(), 0, null);
+        }
+
+        NavigableSet<String> candidates = paths;
+        String position = decodePathCursor(cursor);
+        if (position != null) {
+            candidates = paths.tailSet(position, false);
+        }
+
+        List<ScanResultSummary> items = new ArrayList<>();
+        boolean hasMore = false;
+        for (String path : candidates) {
+            if (limit > 0 && items.size() == limit) {
+                hasMore = true;
+                break;
+            }
+            items.add(entries.get(path));
+        }
+
+        String nextCursor = hasMore ? encodePathCursor(items.get(items.size() - 1).getPagePath()) : null;
+        return new ResultPage(items, paths.size(), nextCursor);
+    }
+
+    /**
+     * Violation fingerprints of a rule with the number of pages they occur on, most widespread first.
+     * A fingerprint found on many pages usually points at a shared component.
+     *
+     * @param ruleId The axe rule id
+     * @param limit Maximum number of fingerprints, 0 or less for all
+     */
+    public synchronized List<Map<String, Object>> getRuleFingerprints(String ruleId, int limit) {
+        Map<String, NavigableSet<String>> byFingerprint = pagesByFingerprint.get(ruleId);
+        if (byFingerprint == null) {
+            return Collections.emptyList();
+        }
+        List<Map.Entry<String, NavigableSet<String>>> sorted = new ArrayList<>(byFingerprint.entrySet());
+        sorted.sort(Comparator.comparingInt((Map.Entry<String, NavigableSet<String>> entry) -> entry.getValue().size()).reversed()
+                .thenComparing(Map.Entry::getKey));
+
+        List<Map<String, Object>> fingerprints = new ArrayList<>();
+        for (Map.Entry<String, NavigableSet<String>> entry : sorted) {
+            if (limit > 0 && fingerprints.size() == limit) {
+                break;
+            }
+            Map<String, Object> fingerprint = new LinkedHashMap<>();
+            fingerprint.put("fingerprint", entry.getKey());
+            fingerprint.put("pageCount", entry.getValue().size());
+            fingerprints.add(fingerprint);
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Update the index entry for a scan result node right after it was written,
+     * without waiting for the observation event.
+     *
+     * @param scanNode The scan result node
+     */
+    public void update(Node scanNode) throws RepositoryException {
+        if (isScanResult(scanNode)) {
+            put(ScanResultSummary.fromNode(scanNode));
+        } else {
+            remove(ScanResultSummary.toPagePath(scanNode.getPath()));
+        }
+    }
+
+    /**
+     * Remove the index entry of a page whose result was deleted.
+     *
+     * @param pagePath The page path
+     */
+    public synchronized void remove(String pagePath) {
+        ScanResultSummary previous = entries.remove(pagePath);
+        if (previous != null) {
+            byScanDate.remove(previous);
+            facets.remove(previous);
+            unlinkRules(previous);
+        }
+    }
+
+    private synchronized void put(ScanResultSummary summary) {
+        ScanResultSummary previous = entries.put(summary.getPagePath(), summary);
+        if (previous != null) {
+            byScanDate.remove(previous);
+            facets.remove(previous);
+            unlinkRules(previous);
+        }
+        byScanDate.add(summary);
+        facets.add(summary);
+        linkRules(summary);
+    }
+
+    private void linkRules(ScanResultSummary summary) {
+        for (int i = 0; i < summary.getRuleCount(); i++) {
+            pagesByRule.computeIfAbsent(summary.getRule(i), key -> new TreeSet<>()).add(summary.getPagePath());
+        }
+        for (int i = 0; i < summary.getFingerprintCount(); i++) {
+            String fingerprint = summary.getFingerprint(i);
+            pagesByFingerprint.computeIfAbsent(ScanResultSummary.getFingerprintRule(fingerprint), key -> new HashMap<>())
+                    .computeIfAbsent(fingerprint, key -> new TreeSet<>())
+                    .add(summary.getPagePath());
+        }
+    }
+
+    private void unlinkRules(ScanResultSummary summary) {
+        for (int i = 0; i < summary.getRuleCount(); i++) {
+            NavigableSet<String> paths = pagesByRule.get(summary.getRule(i));
+            if (paths != null && paths.remove(summary.getPagePath()) && paths.isEmpty()) {
+                pagesByRule.remove(summary.getRule(i));
+            }
+        }
+        for (int i = 0; i < summary.getFingerprintCount(); i++) {
+            String fingerprint = summary.getFingerprint(i);
+            String rule = ScanResultSummary.getFingerprintRule(fingerprint);
+            Map<String, NavigableSet<String>> byFingerprint = pagesByFingerprint.get(rule);
+            if (byFingerprint == null) {
+                continue;
+            }
+            NavigableSet<String> paths = byFingerprint.get(fingerprint);
+            if (paths != null && paths.remove(summary.getPagePath()) && paths.isEmpty()) {
+                byFingerprint.remove(fingerprint);
+                if (byFingerprint.isEmpty()) {
+                    pagesByFingerprint.remove(rule);
+                }
+            }
+        }
+    }
+
+    private synchronized void load(Session session) throws RepositoryException {
+        long start = System.currentTimeMillis();
+        entries.clear();
+        byScanDate.clear();
+        facets.clear();
+        pagesByRule.clear();
+        pagesByFingerprint.clear();
+        if (session.nodeExists(SCAN_RESULTS_PATH)) {
+            collect(session.getNode(SCAN_RESULTS_PATH));
+        }
+        loaded = true;
+        log.info("Loaded {} scan result summaries in {} ms", entries.size(), System.currentTimeMillis() - start);
+    }
+
+    private void collect(Node node) throws RepositoryException {
+        if (isScanResult(node)) {
+            put(ScanResultSummary.fromNode(node));
+        }
+
+        NodeIterator children = node.getNodes();
+        while (children.hasNext()) {
+            Node child = children.nextNode();
+            if (!child.getName().startsWith("jcr:") && !child.getName().startsWith("mgnl:")) {
+                collect(child);
+            }
+        }
+    }
+
+    private boolean isScanResult(Node node) throws RepositoryException {
+        return NodeUtil.isNodeType(node, NodeTypes.Content.NAME) && node.hasProperty("scanId");
+    }
+
+    private void onEvent(EventIterator events) {
+        Set<String> changedPaths = new LinkedHashSet<>();
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            try {
+                String path = event.getPath();
+                if (event.getType() == Event.PROPERTY_ADDED || event.getType() == Event.PROPERTY_CHANGED
+                        || event.getType() == Event.PROPERTY_REMOVED) {
+                    path = path.substring(0, path.lastIndexOf('/'));
+                }
+                changedPaths.add(path);
+            } catch (RepositoryException e) {
+                log.warn("Could not read path of scan result event", e);
+            }
+        }
+        if (changedPaths.isEmpty() || !loaded) {
+            return;
+        }
+
+        try {
+            MgnlContext.doInSystemContext(new MgnlContext.Op<Void, RepositoryException>() {
+                @Override
+                public Void exec() throws RepositoryException {
+                    Session session = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
+                    for (String path : changedPaths) {
+                        refresh(session, path);
+                    }
+                    return null;
+                }
+            });
+        } catch (RepositoryException e) {
+            log.error("Error refreshing scan result index, reloading on next access", e);
+            loaded = false;
+        }
+    }
+
+    private void refresh(Session session, String nodePath) throws RepositoryException {
+        if (session.nodeExists(nodePath)) {
+            update(session.getNode(nodePath));
+            return;
+        }
+
+        // The node and all descendant results were removed
+        String pagePath = ScanResultSummary.toPagePath(nodePath);
+        for (String path : new ArrayList<>(entries.keySet())) {
+            if (path.equals(pagePath) || path.startsWith(pagePath + "/")) {
+                remove(path);
+            }
+        }
+    }
+
+    private String encodeCursor(ScanResultSummary summary) {
+        String key = summary.getScanDate() + ":" + summary.getPagePath();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ScanResultSummary decodeCursor(String cursor) {
+        if (StringUtils.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = key.indexOf(':');
+            long scanDate = Long.parseLong(key.substring(0, separator));
+            String pagePath = key.substring(separator + 1);
+            return ScanResultSummary.forPosition(scanDate, pagePath);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    private String encodePathCursor(String pagePath) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(pagePath.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String decodePathCursor(String cursor) {
+        if (StringUtils.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * Filter criteria for scan result summaries. Blank or null criteria are ignored.
+     */
+    public static class Filter {
+        private final String pagePath;
+        private final String severity;
+        private final String wcagLevel;
+        private final Long dateFrom;
+        private final Long dateTo;
+
+        /**
+         * @param pagePath Page path prefix
+         * @param severity Impact level that must have at least one violation
+         * @param wcagLevel WCAG level the page was scanned with
+         * @param dateFrom Minimum scan date (timestamp)
+         * @param dateTo Maximum scan date (timestamp)
+         */
+        public Filter(String pagePath, String severity, String wcagLevel, Long dateFrom, Long dateTo) {
+            this.pagePath = pagePath;
+            this.severity = severity;
+            this.wcagLevel = wcagLevel;
+            this.dateFrom = dateFrom;
+            this.dateTo = dateTo;
+        }
+
+        /**
+         * A filter matching every summary.
+         */
+        public static Filter all() {
+            return new Filter(null, null, null, null, null);
+        }
+
+        public boolean isEmpty() {
+            return StringUtils.isBlank(pagePath) && StringUtils.isBlank(severity) && StringUtils.isBlank(wcagLevel)
+                    && dateFrom == null && dateTo == null;
+        }
+
+        public boolean matches(ScanResultSummary summary) {
+            if (StringUtils.isNotBlank(pagePath) && !summary.getPagePath().startsWith(pagePath)) {
+                return false;
+            }
+            if (StringUtils.isNotBlank(severity) && summary.getImpactCount(severity) <= 0) {
+                return false;
+            }
+            if (StringUtils.isNotBlank(wcagLevel) && !wcagLevel.equals(summary.getWcagLevel())) {
+                return false;
+            }
+            if (dateFrom != null && summary.getScanDate() < dateFrom) {
+                return false;
+            }
+            return dateTo == null || summary.getScanDate() <= dateTo;
+        }
+    }
+
+    /**
+     * One page of scan result summaries.
+     */
+    public static class ResultPage {
+        private final List<ScanResultSummary> items;
+        private final int total;
+        private final String nextCursor;
+
+        public ResultPage(List<ScanResultSummary> items, int total, String nextCursor) {
+            this.items = items;
+            this.total = total;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<ScanResultSummary> getItems() { return items; }
+        public int getTotal() { return total; }
+        public String getNextCursor() { return nextCursor; }
+    }
+}
@@ -0,0 +1,361 @@
+package work.noice.easya11y.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.jcr.util.PropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import work.noice.easya11y.models.AccessibilityScanResult;
+import work.noice.easya11y.models.ScanDiff;
+import work.noice.easya11y.models.ScanHistory;
+import work.noice.easya11y.models.ScanResultSummary;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores axe-core scan results in the easya11y workspace, for scans run in the browser as well as on the server.
+ * Besides the result node this keeps the page's scan history, the scan summary and section rollups,
+ * the in-memory result index and the change tracker current.
+ */
+@Singleton
+public class ScanResultStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanResultStore.class);
+    private static final String WEBSITE_WORKSPACE = "website";
+    private static final String SCAN_RESULTS_WORKSPACE = "easya11y";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ScanSummaryService summaryService;
+    private final ScanResultIndex scanIndex;
+    private final WorkspaceChangeTracker changeTracker;
+    private final ScanSessionRegistry sessionRegistry;
+
+    @Inject
+    public ScanResultStore(ScanSummaryService summaryService, ScanResultIndex scanIndex,
+                           WorkspaceChangeTracker changeTracker, ScanSessionRegistry sessionRegistry) {
+        this.summaryService = summaryService;
+        this.scanIndex = scanIndex;
+        this.changeTracker = changeTracker;
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    /**
+     * Store the results of a scan.
+     *
+     * @param scanResults The scan results from axe-core, with scanId, pagePath, pageUrl, pageTitle, score
+     *                    and optionally runId and wcagLevel
+     * @return The store response, with the page title, the score and the changes against the previous scan or run
+     * @throws IllegalArgumentException if the score or the axe results are missing or invalid
+     */
+    public Map<String, Object> store(JsonNode scanResults) throws RepositoryException, IOException {
+        // Extract basic information
+        String scanId = scanResults.get("scanId").asText();
+        String pagePath = scanResults.get("pagePath").asText();
+        String pageUrl = scanResults.get("pageUrl").asText();
+        String pageTitle = scanResults.get("pageTitle").asText();
+        String runId = scanResults.hasNonNull("runId") ? scanResults.get("runId").asText() : null;
+
+        // Get WCAG level from request or use stored value from scan initiation
+        ScanSessionRegistry.ScanSession session = sessionRegistry.get(scanId);
+        String wcagLevel = scanResults.has("wcagLevel") ?
+            scanResults.get("wcagLevel").asText() :
+            session != null ? session.getWcagLevel() : "AA";
+
+        // Get score from frontend (required)
+        if (!scanResults.has("score")) {
+            throw new IllegalArgumentException("Score is required from frontend calculation");
+        }
+        Double frontendScore = scanResults.get("score").asDouble();
+
+        // Validate score range
+        if (frontendScore < 0 || frontendScore > 100) {
+            throw new IllegalArgumentException("Score must be between 0 and 100");
+        }
+
+        // The scan is no longer in progress
+        sessionRegistry.complete(scanId);
+
+        // Get axe results
+        JsonNode axeResults = scanResults.get("axeResults");
+        if (axeResults == null) {
+            throw new IllegalArgumentException("No axe results provided");
+        }
+
+        // Create scan result model
+        AccessibilityScanResult result = new AccessibilityScanResult(pagePath, pageUrl);
+        result.setId(scanId);
+        result.setPageTitle(pageTitle);
+        result.setWcagLevel(wcagLevel);
+        // Get scanner version safely
+        String scannerVersion = "unknown";
+        if (axeResults.has("testEngine")) {
+            JsonNode testEngine = axeResults.get("testEngine");
+            if (testEngine != null && testEngine.has("version")) {
+                scannerVersion = "axe-" + testEngine.get("version").asText("unknown");
+            }
+        } else if (axeResults.has("toolOptions")) {
+            JsonNode toolOptions = axeResults.get("toolOptions");
+            if (toolOptions != null && toolOptions.has("version")) {
+                scannerVersion = toolOptions.get("version").asText("unknown");
+            }
+        }
+        result.setScannerVersion(scannerVersion);
+
+        // Process violations
+        JsonNode violations = axeResults.get("violations");
+        if (violations != null && violations.isArray()) {
+            processScanItems(violations, result.getViolations(), AccessibilityScanResult.Violation.class, result);
+        }
+
+        // Process passes
+        JsonNode passes = axeResults.get("passes");
+        if (passes != null && passes.isArray()) {
+            List<AccessibilityScanResult.Pass> passList = new ArrayList<>();
+            int totalPassElements = 0;
+            for (JsonNode pass : passes) {
+                AccessibilityScanResult.Pass p = new AccessibilityScanResult.Pass();
+                p.setId(pass.get("id").asText());
+                p.setDescription(pass.get("description").asText());
+                p.setHelp(pass.get("help").asText());
+                int nodeCount = pass.get("nodes").size();
+                p.setNodeCount(nodeCount);
+                totalPassElements += nodeCount;
+                passList.add(p);
+            }
+            result.setPasses(passList);
+
+            // Calculate total elements (elements that passed + elements with issues)
+            result.setTotalElements(totalPassElements + result.getElementsWithIssues());
+        }
+
+        // Set the frontend-calculated score
+        result.setScore(frontendScore);
+
+        // Store in JCR
+        Session scanSession = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
+        String scanResultPath = "/scanResults" + pagePath;
+
+        // Create parent nodes if needed
+        ensureParentNodes(scanSession, scanResultPath);
+
+        // Create or update scan result node
+        Node scanNode;
+        if (scanSession.nodeExists(scanResultPath)) {
+            scanNode = scanSession.getNode(scanResultPath);
+        } else {
+            Node parentNode = scanSession.getNode(scanResultPath.substring(0, scanResultPath.lastIndexOf('/')));
+            scanNode = parentNode.addNode(scanResultPath.substring(scanResultPath.lastIndexOf('/') + 1), "mgnl:content");
+        }
+
+        // Contributions of the replaced and the new result to the summary and the section rollups
+        ScanSummaryService.Contribution previous = ScanSummaryService.Contribution.fromNode(scanNode);
+        ScanSummaryService.Contribution current = null;
+        if (NodeUtil.isNodeType(scanNode, "mgnl:content")) {
+            Map<String, Integer> impacts = result.getViolationsByImpact();
+            current = new ScanSummaryService.Contribution(result.getScore(),
+                impacts.get("critical"), impacts.get("serious"), impacts.get("moderate"), impacts.get("minor"));
+        }
+        ScanHistory history = ScanHistory.fromNode(scanNode);
+
+        // Store scan data
+        long scanDate = new Date().getTime();
+        scanNode.setProperty("scanId", scanId);
+        scanNode.setProperty("runId", runId);
+        scanNode.setProperty("pageUrl", pageUrl);
+        scanNode.setProperty("pageTitle", pageTitle);
+        scanNode.setProperty("scanDate", scanDate);
+        scanNode.setProperty("wcagLevel", wcagLevel);
+        scanNode.setProperty("score", result.getScore());
+        scanNode.setProperty("violationCount", result.getViolations().size());
+        scanNode.setProperty("passCount", result.getPasses().size());
+        scanNode.setProperty("totalElements", result.getTotalElements());
+        scanNode.setProperty("elementsWithIssues", result.getElementsWithIssues());
+
+        // Store violations summary
+        for (Map.Entry<String, Integer> entry : result.getViolationsByImpact().entrySet()) {
+            scanNode.setProperty("violations_" + entry.getKey(), entry.getValue());
+        }
+
+        // Store violated rules for the aggregation counters
+        List<AccessibilityScanResult.Violation> violationList = result.getViolations();
+        String[] rules = new String[violationList.size()];
+        String[] ruleImpacts = new String[violationList.size()];
+        Value[] ruleNodes = new Value[violationList.size()];
+        Map<String, String> fingerprintImpacts = new LinkedHashMap<>();
+        for (int i = 0; i < violationList.size(); i++) {
+            AccessibilityScanResult.Violation violation = violationList.get(i);
+            rules[i] = violation.getId();
+            ruleImpacts[i] = violation.getImpact();
+            ruleNodes[i] = scanSession.getValueFactory().createValue(violation.getNodes().size());
+            for (AccessibilityScanResult.Node node : violation.getNodes()) {
+                fingerprintImpacts.put(ScanResultSummary.fingerprint(violation.getId(), node.getTarget()), violation.getImpact());
+            }
+        }
+        Set<String> fingerprints = fingerprintImpacts.keySet();
+        scanNode.setProperty("violationRules", rules);
+        scanNode.setProperty("violationRuleImpacts", ruleImpacts);
+        scanNode.setProperty("violationRuleNodes", ruleNodes);
+        scanNode.setProperty("violationFingerprints", fingerprints.toArray(new String[0]));
+        scanNode.setProperty("template", getPageTemplate(pagePath));
+
+        // Diff against the previous scan of the page, or its previous run for a scan of a run,
+        // and retain this scan in its history
+        ScanHistory.Entry previousScan = runId != null ? history.findPreviousRun(runId) : history.getLatest();
+        ScanDiff diff = ScanDiff.between(previousScan != null ? previousScan.getFingerprints() : null, fingerprints);
+        history.append(new ScanHistory.Entry(scanId, runId, scanDate, result.getScore(), fingerprints.toArray(new String[0])));
+        history.write(scanNode);
+
+        // Store detailed results as JSON
+        scanNode.setProperty("fullResults", objectMapper.writeValueAsString(result));
+
+        scanSession.save();
+        summaryService.recordChange(scanResultPath, previous, current);
+        scanIndex.update(scanNode);
+        changeTracker.markChanged(SCAN_RESULTS_WORKSPACE);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("scanId", scanId);
+        response.put("pageTitle", pageTitle);
+        response.put("score", result.getScore());
+        response.put("violationCount", result.getViolations().size());
+        response.put("passCount", result.getPasses().size());
+        response.put("totalElements", result.getTotalElements());
+        response.put("elementsWithIssues", result.getElementsWithIssues());
+        if (previousScan != null) {
+            Map<String, Object> changes = diff.toMap(false);
+            int newCritical = 0;
+            int newSerious = 0;
+            for (String fingerprint : diff.getNewViolations()) {
+                String impact = fingerprintImpacts.get(fingerprint);
+                if ("critical".equals(impact)) {
+                    newCritical++;
+                } else if ("serious".equals(impact)) {
+                    newSerious++;
+                }
+            }
+            changes.put("newCritical", newCritical);
+            changes.put("newSerious", newSerious);
+            response.put("previousScanId", previousScan.getScanId());
+            response.put("previousRunId", previousScan.getRunId());
+            response.put("previousScore", previousScan.getScore());
+            response.put("changes", changes);
+        }
+        response.put("message", "Scan results stored successfully");
+
+        return response;
+    }
+
+    /**
+     * Process scan items (violations, incomplete, etc.)
+     */
+    private <T> void processScanItems(JsonNode items, List<T> targetList, Class<T> itemClass, AccessibilityScanResult result) {
+        if (!items.isArray()) return;
+
+        for (JsonNode item : items) {
+            try {
+                if (itemClass == AccessibilityScanResult.Violation.class) {
+                    AccessibilityScanResult.Violation violation = new AccessibilityScanResult.Violation();
+                    violation.setId(item.has("id") ? item.get("id").asText() : "");
+                    violation.setImpact(item.has("impact") ? item.get("impact").asText() : "");
+                    violation.setDescription(item.has("description") ? item.get("description").asText() : "");
+                    violation.setHelp(item.has("help") ? item.get("help").asText() : "");
+                    violation.setHelpUrl(item.has("helpUrl") ? item.get("helpUrl").asText() : "");
+
+                    // Process tags
+                    JsonNode tags = item.get("tags");
+                    if (tags != null && tags.isArray()) {
+                        List<String> tagList = new ArrayList<>();
+                        for (JsonNode tag : tags) {
+                            tagList.add(tag.asText());
+                            // Update WCAG level counts
+                            if (tag.asText().matches("wcag2?a{1,3}")) {
+                                String level = tag.asText().toUpperCase().replaceAll("WCAG2?", "");
+                                result.getViolationsByWcagLevel().merge(level, 1, Integer::sum);
+                            }
+                        }
+                        violation.setTags(tagList);
+                    }
+
+                    // Process nodes
+                    JsonNode nodes = item.get("nodes");
+                    if (nodes != null && nodes.isArray()) {
+                        List<AccessibilityScanResult.Node> nodeList = new ArrayList<>();
+                        for (JsonNode node : nodes) {
+                            AccessibilityScanResult.Node n = new AccessibilityScanResult.Node();
+
+                            // Handle target array
+                            JsonNode targetArray = node.get("target");
+                            if (targetArray != null && targetArray.isArray() && targetArray.size() > 0) {
+                                n.setTarget(targetArray.get(0).asText());
+                            }
+
+                            n.setHtml(node.get("html").asText(""));
+                            n.setFailureSummary(node.get("failureSummary").asText(""));
+                            n.setImpact(node.get("impact").asText(""));
+
+                            nodeList.add(n);
+                        }
+                        violation.setNodes(nodeList);
+                        result.setElementsWithIssues(result.getElementsWithIssues() + nodeList.size());
+                    }
+
+                    // Update impact counts
+                    result.getViolationsByImpact().merge(violation.getImpact(), 1, Integer::sum);
+
+                    targetList.add((T) violation);
+                }
+            } catch (Exception e) {
+                log.warn("Error processing scan item", e);
+            }
+        }
+    }
+
+    /**
+     * Get the template of a page from the website workspace.
+     *
+     * @return The template id, or null if the page or its template cannot be read
+     */
+    private String getPageTemplate(String pagePath) {
+        try {
+            Session websiteSession = MgnlContext.getJCRSession(WEBSITE_WORKSPACE);
+            if (websiteSession.nodeExists(pagePath)) {
+                return PropertyUtil.getString(websiteSession.getNode(pagePath), "mgnl:template");
+            }
+        } catch (RepositoryException e) {
+            log.warn("Could not get template for page: {}", pagePath);
+        }
+        return null;
+    }
+
+    /**
+     * Ensure parent nodes exist for a given path.
+     */
+    private void ensureParentNodes(Session session, String path) throws RepositoryException {
+        String[] parts = path.split("/");
+        String currentPath = "";
+
+        for (int i = 1; i < parts.length - 1; i++) {
+            currentPath += "/" + parts[i];
+            if (!session.nodeExists(currentPath)) {
+                Node parentNode = session.getNode(currentPath.substring(0, currentPath.lastIndexOf('/')));
+                parentNode.addNode(parts[i], "mgnl:folder");
+            }
+        }
+    }
+}
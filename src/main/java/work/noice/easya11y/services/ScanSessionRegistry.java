@@ -0,0 +1,194 @@
+package work.noice.easya11y.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of client-side scans that were initiated but whose results have not been stored yet.
+ * Sessions expire after a time to live and the registry is bounded, so scans abandoned in the
+ * browser do not accumulate. Expired sessions are purged on access, no background thread is used.
+ */
+@Singleton
+public class ScanSessionRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanSessionRegistry.class);
+    private static final int MAX_SESSIONS = 1000;
+    private static final long SESSION_TTL = 30 * 60 * 1000L;
+    private static final long STALE_AFTER = 5 * 60 * 1000L;
+
+    private final Map<String, ScanSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+
+    /**
+     * Register a new scan session.
+     *
+     * @param pagePath The page being scanned
+     * @param wcagLevel The WCAG level to test
+     * @param initiator Name of the user who started the scan, may be null
+     * @return The session, with a new scan id
+     */
+    public ScanSession register(String pagePath, String wcagLevel, String initiator) {
+        purgeExpired();
+        while (sessions.size() >= MAX_SESSIONS) {
+            evictOldest();
+        }
+        ScanSession session = new ScanSession(UUID.randomUUID().toString(), pagePath, wcagLevel, initiator,
+                System.currentTimeMillis());
+        sessions.put(session.getScanId(), session);
+        return session;
+    }
+
+    /**
+     * Get an active session.
+     *
+     * @param scanId The scan id
+     * @return The session, or null if it is unknown, completed or expired
+     */
+    public ScanSession get(String scanId) {
+        if (scanId == null) {
+            return null;
+        }
+        ScanSession session = sessions.get(scanId);
+        if (session != null && isExpired(session, System.currentTimeMillis())) {
+            if (sessions.remove(scanId, session)) {
+                expiredCount.incrementAndGet();
+            }
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Remove a session because its results were stored.
+     *
+     * @param scanId The scan id
+     * @return The removed session, or null if it was not active
+     */
+    public ScanSession complete(String scanId) {
+        ScanSession session = scanId != null ? sessions.remove(scanId) : null;
+        if (session != null) {
+            completedCount.incrementAndGet();
+        }
+        return session;
+    }
+
+    /**
+     * Get the active sessions, oldest first.
+     */
+    public List<ScanSession> getActive() {
+        purgeExpired();
+        List<ScanSession> active = new ArrayList<>(sessions.values());
+        active.sort(Comparator.comparingLong(ScanSession::getStartedAt));
+        return active;
+    }
+
+    /**
+     * Counters of the registry since module start.
+     */
+    public Map<String, Object> getStatistics() {
+        List<ScanSession> active = getActive();
+        long now = System.currentTimeMillis();
+        int stale = 0;
+        for (ScanSession session : active) {
+            if (session.isStale(now)) {
+                stale++;
+            }
+        }
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("activeCount", active.size());
+        statistics.put("staleCount", stale);
+        statistics.put("completedCount", completedCount.get());
+        statistics.put("expiredCount", expiredCount.get());
+        return statistics;
+    }
+
+    /**
+     * Drop all sessions. Called on module stop.
+     */
+    public void clear() {
+        sessions.clear();
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        for (ScanSession session : sessions.values()) {
+            if (isExpired(session, now) && sessions.remove(session.getScanId(), session)) {
+                expiredCount.incrementAndGet();
+                log.debug("Scan session {} for page {} expired without results", session.getScanId(), session.getPagePath());
+            }
+        }
+    }
+
+    private void evictOldest() {
+        ScanSession oldest = null;
+        for (ScanSession session : sessions.values()) {
+            if (oldest == null || session.getStartedAt() < oldest.getStartedAt()) {
+                oldest = session;
+            }
+        }
+        if (oldest != null && sessions.remove(oldest.getScanId(), oldest)) {
+            expiredCount.incrementAndGet();
+            log.debug("Evicted scan session {} to stay within {} sessions", oldest.getScanId(), MAX_SESSIONS);
+        }
+    }
+
+    private boolean isExpired(ScanSession session, long now) {
+        return now - session.getStartedAt() > SESSION_TTL;
+    }
+
+    /**
+     * A scan started in the browser.
+     */
+    public static class ScanSession {
+        private final String scanId;
+        private final String pagePath;
+        private final String wcagLevel;
+        private final String initiator;
+        private final long startedAt;
+
+        public ScanSession(String scanId, String pagePath, String wcagLevel, String initiator, long startedAt) {
+            this.scanId = scanId;
+            this.pagePath = pagePath;
+            this.wcagLevel = wcagLevel;
+            this.initiator = initiator;
+            this.startedAt = startedAt;
+        }
+
+        /**
+         * Whether the scan has run longer than a browser scan normally takes.
+         */
+        public boolean isStale(long now) {
+            return now - startedAt > STALE_AFTER;
+        }
+
+        public Map<String, Object> toMap() {
+            long now = System.currentTimeMillis();
+            Map<String, Object> map = new HashMap<>();
+            map.put("scanId", scanId);
+            map.put("pagePath", pagePath);
+            map.put("wcagLevel", wcagLevel);
+            map.put("initiator", initiator);
+            map.put("startedAt", startedAt);
+            map.put("ageMillis", now - startedAt);
+            map.put("stale", isStale(now));
+            return map;
+        }
+
+        public String getScanId() { return scanId; }
+        public String getPagePath() { return pagePath; }
+        public String getWcagLevel() { return wcagLevel; }
+        public String getInitiator() { return initiator; }
+        public long getStartedAt() { return startedAt; }
+    }
+}
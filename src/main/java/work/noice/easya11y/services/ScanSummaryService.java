@@ -0,0 +1,401 @@
+package work.noice.easya11y.services;
+
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.jcr.util.PropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maintains site-wide scan summary statistics incrementally.
+ * Aggregates are updated on every scan result write or delete, kept in memory and mirrored
+ * on the /scanSummary node of the easya11y workspace, so reading them never walks /scanResults.
+ * Each node under /scanResults additionally carries rollup properties for its subtree
+ * (page count, score sum, violations by impact), updated along the ancestor chain of every change.
+ * The summary node and the rollups are only written by this service, one change at a time and in a system
+ * session of its own, after the result itself was saved, so concurrent result writes never conflict on them.
+ */
+@Singleton
+public class ScanSummaryService {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanSummaryService.class);
+    private static final String SCAN_RESULTS_WORKSPACE = "easya11y";
+    private static final String SCAN_RESULTS_PATH = "/scanResults";
+    private static final String SUMMARY_NODE_NAME = "scanSummary";
+    private static final String SUMMARY_NODE_PATH = "/" + SUMMARY_NODE_NAME;
+    private static final String ROLLUPS_BUILT = "rollupsBuilt";
+
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private Totals totals;
+    private boolean rebuildNeeded;
+
+    /**
+     * Get the current summary statistics.
+     * The first call rebuilds the aggregates from the stored results if no summary node exists yet.
+     *
+     * @return Summary statistics map
+     */
+    public Map<String, Object> getSummary() throws RepositoryException {
+        synchronized (lock) {
+            if (totals == null) {
+                inSummarySession((session, loaded) -> null);
+            }
+            return totals.toMap();
+        }
+    }
+
+    /**
+     * Apply the change of a single page result to the summary statistics and to the rollups of the scan node
+     * and its ancestors. Must be called after the change of the result was saved. The in-memory aggregates only
+     * change once the update was saved; if that fails, the aggregates and rollups are rebuilt from the stored
+     * results on next access.
+     *
+     * @param scanNodePath Path of the scan result node that was written or deleted
+     * @param previous Contribution of the replaced result, or null if the page had no result
+     * @param current Contribution of the new result, or null if the result was deleted
+     */
+    public void recordChange(String scanNodePath, Contribution previous, Contribution current) {
+        synchronized (lock) {
+            try {
+                inSummarySession((session, loaded) -> {
+                    Totals updated = loaded.copy();
+                    if (previous != null) {
+                        updated.add(previous, -1);
+                    }
+                    if (current != null) {
+                        updated.add(current, 1);
+                    }
+                    updated.write(getSummaryNode(session));
+                    updateRollups(session, scanNodePath, previous, current);
+                    return updated;
+                });
+            } catch (RepositoryException e) {
+                log.error("Could not update scan summary, rebuilding it from stored results on next access", e);
+                totals = null;
+                rebuildNeeded = true;
+            }
+        }
+    }
+
+    /**
+     * Get the rollup of a subtree of /scanResults.
+     *
+     * @param scanNode A node under /scanResults
+     * @return Rollup map with page count, average score and violation totals
+     */
+    public Map<String, Object> getRollup(Node scanNode) throws RepositoryException {
+        synchronized (lock) {
+            return Rollup.fromNode(scanNode).toMap();
+        }
+    }
+
+    /**
+     * Run an update of the summary node in the system session, save it and keep the aggregates it wrote.
+     * Loads the aggregates first if needed; the update is skipped when they had to be rebuilt from the stored
+     * results, which already include it. Must be called with the lock held.
+     */
+    private void inSummarySession(SummaryUpdate update) throws RepositoryException {
+        totals = MgnlContext.doInSystemContext(new MgnlContext.Op<Totals, RepositoryException>() {
+            @Override
+            public Totals exec() throws RepositoryException {
+                Session session = MgnlContext.getJCRSession(SCAN_RESULTS_WORKSPACE);
+                try {
+                    Totals current = totals;
+                    Totals updated;
+                    if (current == null && (rebuildNeeded || !isComplete(session))) {
+                        updated = rebuild(session);
+                    } else {
+                        if (current == null) {
+                            current = Totals.fromNode(session.getNode(SUMMARY_NODE_PATH));
+                        }
+                        updated = update.apply(session, current);
+                    }
+                    session.save();
+                    rebuildNeeded = false;
+                    return updated != null ? updated : current;
+                } catch (RepositoryException | RuntimeException e) {
+                    session.refresh(false);
+                    throw e;
+                }
+            }
+        });
+    }
+
+    private boolean isComplete(Session session) throws RepositoryException {
+        return session.nodeExists(SUMMARY_NODE_PATH)
+                && PropertyUtil.getBoolean(session.getNode(SUMMARY_NODE_PATH), ROLLUPS_BUILT, false);
+    }
+
+    /**
+     * Rebuild the aggregates and the rollups from /scanResults and write them to the session.
+     */
+    private Totals rebuild(Session session) throws RepositoryException {
+        log.info("No complete scan summary found, rebuilding summary statistics and rollups from stored results");
+        Totals rebuilt = new Totals();
+        if (session.nodeExists(SCAN_RESULTS_PATH)) {
+            rebuild(session.getNode(SCAN_RESULTS_PATH), rebuilt);
+        }
+        Node summaryNode = getSummaryNode(session);
+        rebuilt.write(summaryNode);
+        summaryNode.setProperty(ROLLUPS_BUILT, true);
+        return rebuilt;
+    }
+
+    /**
+     * Recompute the summary and the rollups of a subtree.
+     *
+     * @return The rollup of the subtree
+     */
+    private Rollup rebuild(Node node, Totals rebuilt) throws RepositoryException {
+        Rollup rollup = new Rollup();
+        Contribution contribution = Contribution.fromNode(node);
+        if (contribution != null) {
+            rebuilt.add(contribution, 1);
+            rollup.add(contribution, 1);
+        }
+
+        NodeIterator children = node.getNodes();
+        while (children.hasNext()) {
+            Node child = children.nextNode();
+            if (!child.getName().startsWith("jcr:") && !child.getName().startsWith("mgnl:")) {
+                rollup.add(rebuild(child, rebuilt));
+            }
+        }
+        rollup.write(node);
+        return rollup;
+    }
+
+    /**
+     * Apply a change to the rollups along the ancestor chain, starting at the scan node or, if it was deleted,
+     * at its closest remaining ancestor.
+     */
+    private void updateRollups(Session session, String scanNodePath, Contribution previous, Contribution current)
+            throws RepositoryException {
+        String path = scanNodePath;
+        while (!session.nodeExists(path) && path.lastIndexOf('/') > 0) {
+            path = path.substring(0, path.lastIndexOf('/'));
+        }
+        if (!session.nodeExists(path)) {
+            return;
+        }
+
+        Node node = session.getNode(path);
+        while (true) {
+            Rollup rollup = Rollup.fromNode(node);
+            if (previous != null) {
+                rollup.add(previous, -1);
+            }
+            if (current != null) {
+                rollup.add(current, 1);
+            }
+            rollup.write(node);
+            if (node.getPath().equals(SCAN_RESULTS_PATH) || node.getDepth() <= 1) {
+                break;
+            }
+            node = node.getParent();
+        }
+    }
+
+    private Node getSummaryNode(Session session) throws RepositoryException {
+        if (session.nodeExists(SUMMARY_NODE_PATH)) {
+            return session.getNode(SUMMARY_NODE_PATH);
+        }
+        return session.getRootNode().addNode(SUMMARY_NODE_NAME, NodeTypes.ContentNode.NAME);
+    }
+
+    /**
+     * A change of the summary node, returning the aggregates it wrote, or null if it wrote none.
+     */
+    private interface SummaryUpdate {
+        Totals apply(Session session, Totals current) throws RepositoryException;
+    }
+
+    /**
+     * Site-wide aggregates, as stored on the summary node.
+     */
+    private static final class Totals {
+        private long totalScans;
+        private double scoreSum;
+        private long totalCritical;
+        private long totalSerious;
+        private long totalModerate;
+        private long totalMinor;
+        private long perfectScorePages;
+
+        static Totals fromNode(Node summaryNode) throws RepositoryException {
+            Totals totals = new Totals();
+            totals.totalScans = PropertyUtil.getLong(summaryNode, "totalScans", 0L);
+            totals.scoreSum = summaryNode.hasProperty("scoreSum") ? summaryNode.getProperty("scoreSum").getDouble() : 0.0;
+            totals.totalCritical = PropertyUtil.getLong(summaryNode, "totalCritical", 0L);
+            totals.totalSerious = PropertyUtil.getLong(summaryNode, "totalSerious", 0L);
+            totals.totalModerate = PropertyUtil.getLong(summaryNode, "totalModerate", 0L);
+            totals.totalMinor = PropertyUtil.getLong(summaryNode, "totalMinor", 0L);
+            totals.perfectScorePages = PropertyUtil.getLong(summaryNode, "perfectScorePages", 0L);
+            return totals;
+        }
+
+        Totals copy() {
+            Totals copy = new Totals();
+            copy.totalScans = totalScans;
+            copy.scoreSum = scoreSum;
+            copy.totalCritical = totalCritical;
+            copy.totalSerious = totalSerious;
+            copy.totalModerate = totalModerate;
+            copy.totalMinor = totalMinor;
+            copy.perfectScorePages = perfectScorePages;
+            return copy;
+        }
+
+        void add(Contribution contribution, int sign) {
+            totalScans += sign;
+            scoreSum += sign * contribution.getScore();
+            totalCritical += sign * contribution.getCritical();
+            totalSerious += sign * contribution.getSerious();
+            totalModerate += sign * contribution.getModerate();
+            totalMinor += sign * contribution.getMinor();
+            if (contribution.isPerfect()) {
+                perfectScorePages += sign;
+            }
+        }
+
+        void write(Node summaryNode) throws RepositoryException {
+            summaryNode.setProperty("totalScans", totalScans);
+            summaryNode.setProperty("scoreSum", scoreSum);
+            summaryNode.setProperty("totalCritical", totalCritical);
+            summaryNode.setProperty("totalSerious", totalSerious);
+            summaryNode.setProperty("totalModerate", totalModerate);
+            summaryNode.setProperty("totalMinor", totalMinor);
+            summaryNode.setProperty("perfectScorePages", perfectScorePages);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("totalScans", totalScans);
+            stats.put("averageScore", totalScans > 0 ? Math.round(scoreSum / totalScans * 10) / 10.0 : 0.0);
+            stats.put("totalCritical", totalCritical);
+            stats.put("totalSerious", totalSerious);
+            stats.put("totalModerate", totalModerate);
+            stats.put("totalMinor", totalMinor);
+            stats.put("totalViolations", totalCritical + totalSerious + totalModerate + totalMinor);
+            stats.put("perfectScorePages", perfectScorePages);
+            return stats;
+        }
+    }
+
+    /**
+     * Aggregates of all results in a subtree of /scanResults, stored as rollup_* properties on the subtree root.
+     */
+    private static final class Rollup {
+        private long pageCount;
+        private double scoreSum;
+        private long critical;
+        private long serious;
+        private long moderate;
+        private long minor;
+
+        static Rollup fromNode(Node node) throws RepositoryException {
+            Rollup rollup = new Rollup();
+            rollup.pageCount = PropertyUtil.getLong(node, "rollup_pageCount", 0L);
+            rollup.scoreSum = node.hasProperty("rollup_scoreSum") ? node.getProperty("rollup_scoreSum").getDouble() : 0.0;
+            rollup.critical = PropertyUtil.getLong(node, "rollup_critical", 0L);
+            rollup.serious = PropertyUtil.getLong(node, "rollup_serious", 0L);
+            rollup.moderate = PropertyUtil.getLong(node, "rollup_moderate", 0L);
+            rollup.minor = PropertyUtil.getLong(node, "rollup_minor", 0L);
+            return rollup;
+        }
+
+        void add(Contribution contribution, int sign) {
+            pageCount += sign;
+            scoreSum += sign * contribution.getScore();
+            critical += sign * contribution.getCritical();
+            serious += sign * contribution.getSerious();
+            moderate += sign * contribution.getModerate();
+            minor += sign * contribution.getMinor();
+        }
+
+        void add(Rollup other) {
+            pageCount += other.pageCount;
+            scoreSum += other.scoreSum;
+            critical += other.critical;
+            serious += other.serious;
+            moderate += other.moderate;
+            minor += other.minor;
+        }
+
+        void write(Node node) throws RepositoryException {
+            node.setProperty("rollup_pageCount", pageCount);
+            node.setProperty("rollup_scoreSum", scoreSum);
+            node.setProperty("rollup_critical", critical);
+            node.setProperty("rollup_serious", serious);
+            node.setProperty("rollup_moderate", moderate);
+            node.setProperty("rollup_minor", minor);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("pageCount", pageCount);
+            map.put("averageScore", pageCount > 0 ? Math.round(scoreSum / pageCount * 10) / 10.0 : 0.0);
+            map.put("criticalCount", critical);
+            map.put("seriousCount", serious);
+            map.put("moderateCount", moderate);
+            map.put("minorCount", minor);
+            map.put("violationCount", critical + serious + moderate + minor);
+            return map;
+        }
+    }
+
+    /**
+     * The share of a single page result in the summary statistics.
+     */
+    public static final class Contribution {
+        private final double score;
+        private final long critical;
+        private final long serious;
+        private final long moderate;
+        private final long minor;
+
+        public Contribution(double score, long critical, long serious, long moderate, long minor) {
+            this.score = score;
+            this.critical = critical;
+            this.serious = serious;
+            this.moderate = moderate;
+            this.minor = minor;
+        }
+
+        /**
+         * Read the contribution of a stored scan result node.
+         *
+         * @param node The scan result node
+         * @return The contribution, or null if the node holds no scan result
+         */
+        public static Contribution fromNode(Node node) throws RepositoryException {
+            if (!NodeUtil.isNodeType(node, NodeTypes.Content.NAME) || !node.hasProperty("scanId")) {
+                return null;
+            }
+            return new Contribution(
+                    node.hasProperty("score") ? node.getProperty("score").getDouble() : 0.0,
+                    PropertyUtil.getLong(node, "violations_critical", 0L),
+                    PropertyUtil.getLong(node, "violations_serious", 0L),
+                    PropertyUtil.getLong(node, "violations_moderate", 0L),
+                    PropertyUtil.getLong(node, "violations_minor", 0L));
+        }
+
+        public double getScore() { return score; }
+        public long getCritical() { return critical; }
+        public long getSerious() { return serious; }
+        public long getModerate() { return moderate; }
+        public long getMinor() { return minor; }
+        public boolean isPerfect() { return score == 100.0; }
+    }
+}
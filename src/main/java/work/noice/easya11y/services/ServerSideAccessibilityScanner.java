@@ -17,6 +17,7 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -53,6 +54,18 @@ public class ServerSideAccessibilityScanner {
      * @return Scan results as JsonNode
      */
     public JsonNode scanUrl(String url, String wcagLevel) throws Exception {
+        return scanUrl(url, wcagLevel, null);
+    }
+
+    /**
+     * Run accessibility scan on a given URL and report how long the page took to load.
+     *
+     * @param url The URL to scan
+     * @param wcagLevel The WCAG level to test (A, AA, AAA)
+     * @param pageLoadListener Receives the page load time in milliseconds, may be null
+     * @return Scan results as JsonNode
+     */
+    public JsonNode scanUrl(String url, String wcagLevel, LongConsumer pageLoadListener) throws Exception {
         ChromeDriver driver = null;
         try {
             driver = (ChromeDriver) createWebDriver();
@@ -75,7 +88,11 @@ public class ServerSideAccessibilityScanner {
             
             log.info("Original URL: {}", url);
             log.info("Navigating with Basic Auth header set");
+            long navigationStart = System.currentTimeMillis();
             driver.get(url);
+            if (pageLoadListener != null) {
+                pageLoadListener.accept(System.currentTimeMillis() - navigationStart);
+            }
             
             // Wait for page to load
             Thread.sleep(2000);
@@ -200,6 +217,58 @@ public class ServerSideAccessibilityScanner {
         return results;
     }
     
+    /**
+     * Calculate the accessibility score of axe results, weighting violating nodes by impact.
+     *
+     * @param axeResults The axe results
+     * @return Score between 0 and 100
+     */
+    public double calculateScore(JsonNode axeResults) {
+        int totalViolations = 0;
+        double weightedViolations = 0.0;
+        
+        if (axeResults.has("violations")) {
+            JsonNode violations = axeResults.get("violations");
+            for (JsonNode violation : violations) {
+                String impact = violation.get("impact").asText();
+                int nodeCount = violation.get("nodes").size();
+                totalViolations += nodeCount;
+                
+                switch (impact) {
+                    case "critical":
+                        weightedViolations += nodeCount * 10;
+                        break;
+                    case "serious":
+                        weightedViolations += nodeCount * 5;
+                        break;
+                    case "moderate":
+                        weightedViolations += nodeCount * 2;
+                        break;
+                    case "minor":
+                        weightedViolations += nodeCount * 1;
+                        break;
+                }
+            }
+        }
+        
+        // Calculate total elements tested
+        int totalElements = 0;
+        if (axeResults.has("passes")) {
+            JsonNode passes = axeResults.get("passes");
+            for (JsonNode pass : passes) {
+                totalElements += pass.get("nodes").size();
+            }
+        }
+        totalElements += totalViolations;
+        
+        if (totalElements == 0) {
+            return 100.0;
+        }
+        
+        double score = 100.0 - (weightedViolations / totalElements * 100.0);
+        return Math.max(0, Math.min(100, score));
+    }
+    
     private ChromeDriver createWebDriver() {
         ChromeOptions options = new ChromeOptions();
         options.addArguments("--headless");
@@ -0,0 +1,147 @@
+package work.noice.easya11y.services;
+
+import info.magnolia.config.registry.DefinitionProvider;
+import info.magnolia.rendering.template.AreaDefinition;
+import info.magnolia.rendering.template.TemplateDefinition;
+import info.magnolia.rendering.template.registry.TemplateDefinitionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of template metadata (title, type and area definitions) by template id.
+ * A site has few templates but many pages, so page listings resolve templates from here instead of
+ * looking each one up in the template registry, where unknown ids are only reported by exception.
+ * The cache is rebuilt when the set of registered template providers changes, which is checked
+ * at most once per refresh interval.
+ */
+@Singleton
+public class TemplateMetadataCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TemplateMetadataCache.class);
+    private static final long REFRESH_INTERVAL = 10000;
+
+    private final Provider<TemplateDefinitionRegistry> templateRegistryProvider;
+
+    private volatile Map<String, TemplateMetadata> templates = Collections.emptyMap();
+    // Providers the cache was built from, guarded by this
+    private List<DefinitionProvider<TemplateDefinition>> providers = Collections.emptyList();
+    private volatile long checkedAt;
+
+    @Inject
+    public TemplateMetadataCache(Provider<TemplateDefinitionRegistry> templateRegistryProvider) {
+        this.templateRegistryProvider = templateRegistryProvider;
+    }
+
+    /**
+     * Get the metadata of a template.
+     *
+     * @param templateId The template id
+     * @return The metadata, or null if no valid template with this id is registered
+     */
+    public TemplateMetadata get(String templateId) {
+        if (templateId == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - checkedAt > REFRESH_INTERVAL) {
+            refresh();
+        }
+        return templates.get(templateId);
+    }
+
+    /**
+     * Get the title of a template.
+     *
+     * @param templateId The template id
+     * @return The title, or null if the template is unknown or has no title
+     */
+    public String getTitle(String templateId) {
+        TemplateMetadata metadata = get(templateId);
+        return metadata != null ? metadata.getTitle() : null;
+    }
+
+    /**
+     * Drop the cached metadata so it is rebuilt on next access.
+     */
+    public synchronized void invalidate() {
+        providers = Collections.emptyList();
+        checkedAt = 0;
+    }
+
+    /**
+     * Rebuild the cache if providers were registered, replaced or removed since it was built.
+     * Reloading a definition registers a new provider instance, so comparing instances detects edits too.
+     */
+    private synchronized void refresh() {
+        if (System.currentTimeMillis() - checkedAt <= REFRESH_INTERVAL) {
+            return;
+        }
+        List<DefinitionProvider<TemplateDefinition>> current =
+                new ArrayList<>(templateRegistryProvider.get().getAllProviders());
+        checkedAt = System.currentTimeMillis();
+        if (sameProviders(current)) {
+            return;
+        }
+
+        Map<String, TemplateMetadata> rebuilt = new HashMap<>();
+        for (DefinitionProvider<TemplateDefinition> provider : current) {
+            if (!provider.isValid()) {
+                continue;
+            }
+            try {
+                String templateId = provider.getMetadata().getReferenceId();
+                rebuilt.put(templateId, new TemplateMetadata(templateId, provider.get()));
+            } catch (RuntimeException e) {
+                log.debug("Could not read template definition {}", provider.getMetadata().getReferenceId(), e);
+            }
+        }
+        templates = rebuilt;
+        providers = current;
+        log.debug("Cached metadata of {} templates", rebuilt.size());
+    }
+
+    private boolean sameProviders(List<DefinitionProvider<TemplateDefinition>> current) {
+        if (current.size() != providers.size()) {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            if (current.get(i) != providers.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Template metadata needed outside of rendering.
+     */
+    public static class TemplateMetadata {
+        private final String id;
+        private final String title;
+        private final String type;
+        private final Map<String, AreaDefinition> areas;
+
+        TemplateMetadata(String id, TemplateDefinition definition) {
+            this.id = id;
+            this.title = definition.getTitle();
+            this.type = definition.getType();
+            this.areas = definition.getAreas() != null
+                    ? Collections.unmodifiableMap(new LinkedHashMap<>(definition.getAreas()))
+                    : Collections.<String, AreaDefinition>emptyMap();
+        }
+
+        public String getId() { return id; }
+        public String getTitle() { return title; }
+        public String getType() { return type; }
+        public Map<String, AreaDefinition> getAreas() { return areas; }
+    }
+}
@@ -0,0 +1,302 @@
+package work.noice.easya11y.services;
+
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Reverse index from page and component templates to the pages using them.
+ * Built from mgnl:template of pages and their components in the website workspace and
+ * kept current through JCR observation, so a template change can be followed by a rescan
+ * of exactly the affected pages instead of the whole site. The index is loaded on first use,
+ * as building it walks the whole website workspace.
+ */
+@Singleton
+public class TemplateUsageIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TemplateUsageIndex.class);
+    private static final String WEBSITE_WORKSPACE = "website";
+    private static final long OBSERVATION_DELAY = 1000;
+    private static final long OBSERVATION_MAX_DELAY = 10000;
+
+    // All maps are guarded by this
+    private final Map<String, NavigableSet<String>> pagesByTemplate = new HashMap<>();
+    private final Map<String, NavigableSet<String>> pagesByComponent = new HashMap<>();
+    private final Map<String, PageTemplates> templatesByPage = new HashMap<>();
+    private volatile boolean loaded;
+    private WorkspaceEventListenerRegistration.Handle listenerHandle;
+
+    /**
+     * Start observing the website workspace. Called on module start; the index itself is loaded on first access.
+     */
+    public synchronized void start() {
+        try {
+            listenerHandle = WorkspaceEventListenerRegistration.observe(WEBSITE_WORKSPACE, "/", this::onEvent)
+                    .withSubNodes(true)
+                    .withDelay(OBSERVATION_DELAY, OBSERVATION_MAX_DELAY)
+                    .register();
+        } catch (RepositoryException e) {
+            log.error("Could not observe the website workspace, the template usage index will not follow changes", e);
+        }
+    }
+
+    /**
+     * Stop observing the website workspace. Called on module stop.
+     */
+    public synchronized void stop() {
+        if (listenerHandle != null) {
+            try {
+                listenerHandle.unregister();
+            } catch (RepositoryException e) {
+                log.warn("Could not unregister website observation", e);
+            }
+            listenerHandle = null;
+        }
+        loaded = false;
+        pagesByTemplate.clear();
+        pagesByComponent.clear();
+        templatesByPage.clear();
+    }
+
+    /**
+     * Load the index if it has not been loaded yet. The index is built in the system context, so it
+     * covers all pages regardless of the permissions of the session passed in.
+     *
+     * @param session Session for the website workspace, used if the index cannot be loaded in the system context
+     */
+    public void ensureLoaded(Session session) throws RepositoryException {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    MgnlContext.doInSystemContext(new MgnlContext.Op<Void, RepositoryException>() {
+                        @Override
+                        public Void exec() throws RepositoryException {
+                            load(MgnlContext.getJCRSession(WEBSITE_WORKSPACE));
+                            return null;
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the pages using a template, either as page template or through one of their components.
+     *
+     * @param templateId The template id, e.g. my-module:pages/home or my-module:components/teaser
+     * @param includeComponents Whether pages using the template only for a component are included
+     * @return Page paths in path order
+     */
+    public synchronized NavigableSet<String> getPages(String templateId, boolean includeComponents) {
+        NavigableSet<String> pages = new TreeSet<>();
+        NavigableSet<String> pageUsage = pagesByTemplate.get(templateId);
+        if (pageUsage != null) {
+            pages.addAll(pageUsage);
+        }
+        if (includeComponents) {
+            NavigableSet<String> componentUsage = pagesByComponent.get(templateId);
+            if (componentUsage != null) {
+                pages.addAll(componentUsage);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Number of pages per template, as page template and as component template.
+     */
+    public synchronized Map<String, Map<String, Integer>> getUsageCounts() {
+        Map<String, Map<String, Integer>> counts = new HashMap<>();
+        for (Map.Entry<String, NavigableSet<String>> entry : pagesByTemplate.entrySet()) {
+            counts.computeIfAbsent(entry.getKey(), key -> new HashMap<>()).put("pages", entry.getValue().size());
+        }
+        for (Map.Entry<String, NavigableSet<String>> entry : pagesByComponent.entrySet()) {
+            counts.computeIfAbsent(entry.getKey(), key -> new HashMap<>()).put("componentPages", entry.getValue().size());
+        }
+        return counts;
+    }
+
+    private synchronized void load(Session session) throws RepositoryException {
+        long start = System.currentTimeMillis();
+        pagesByTemplate.clear();
+        pagesByComponent.clear();
+        templatesByPage.clear();
+        collect(session.getRootNode());
+        loaded = true;
+        log.info("Indexed templates of {} pages in {} ms", templatesByPage.size(), System.currentTimeMillis() - start);
+    }
+
+    private void collect(Node node) throws RepositoryException {
+        NodeIterator children = node.getNodes();
+        while (children.hasNext()) {
+            Node child = children.nextNode();
+            if (NodeUtil.isNodeType(child, NodeTypes.Page.NAME)) {
+                indexPage(child);
+                collect(child);
+            } else if (NodeUtil.isNodeType(child, NodeTypes.Folder.NAME)) {
+                collect(child);
+            }
+        }
+    }
+
+    /**
+     * Re-read the templates of one page and its components, replacing its previous entries.
+     */
+    private void indexPage(Node page) throws RepositoryException {
+        PageTemplates templates = new PageTemplates(PropertyUtil.getString(page, NodeTypes.Renderable.TEMPLATE));
+        collectComponents(page, templates.components);
+        unindexPage(page.getPath());
+
+        templatesByPage.put(page.getPath(), templates);
+        if (templates.template != null) {
+            pagesByTemplate.computeIfAbsent(templates.template, key -> new TreeSet<>()).add(page.getPath());
+        }
+        for (String component : templates.components) {
+            pagesByComponent.computeIfAbsent(component, key -> new TreeSet<>()).add(page.getPath());
+        }
+    }
+
+    private void collectComponents(Node node, Set<String> components) throws RepositoryException {
+        NodeIterator children = node.getNodes();
+        while (children.hasNext()) {
+            Node child = children.nextNode();
+            if (NodeUtil.isNodeType(child, NodeTypes.Page.NAME)) {
+                // Subpages are indexed on their own
+                continue;
+            }
+            if (NodeUtil.isNodeType(child, NodeTypes.Component.NAME)) {
+                String template = PropertyUtil.getString(child, NodeTypes.Renderable.TEMPLATE);
+                if (template != null) {
+                    components.add(template);
+                }
+            }
+            if (NodeUtil.isNodeType(child, NodeTypes.Area.NAME) || NodeUtil.isNodeType(child, NodeTypes.Component.NAME)) {
+                collectComponents(child, components);
+            }
+        }
+    }
+
+    private void unindexPage(String pagePath) {
+        PageTemplates previous = templatesByPage.remove(pagePath);
+        if (previous == null) {
+            return;
+        }
+        if (previous.template != null) {
+            removePage(pagesByTemplate, previous.template, pagePath);
+        }
+        for (String component : previous.components) {
+            removePage(pagesByComponent, component, pagePath);
+        }
+    }
+
+    private void removePage(Map<String, NavigableSet<String>> index, String template, String pagePath) {
+        NavigableSet<String> pages = index.get(template);
+        if (pages != null && pages.remove(pagePath) && pages.isEmpty()) {
+            index.remove(template);
+        }
+    }
+
+    private void onEvent(EventIterator events) {
+        Set<String> changedPaths = new LinkedHashSet<>();
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            try {
+                String path = event.getPath();
+                if (event.getType() == Event.PROPERTY_ADDED || event.getType() == Event.PROPERTY_CHANGED
+                        || event.getType() == Event.PROPERTY_REMOVED) {
+                    path = path.substring(0, path.lastIndexOf('/'));
+                }
+                changedPaths.add(path.isEmpty() ? "/" : path);
+            } catch (RepositoryException e) {
+                log.warn("Could not read path of website event", e);
+            }
+        }
+        if (changedPaths.isEmpty() || !loaded) {
+            return;
+        }
+
+        try {
+            MgnlContext.doInSystemContext(new MgnlContext.Op<Void, RepositoryException>() {
+                @Override
+                public Void exec() throws RepositoryException {
+                    Session session = MgnlContext.getJCRSession(WEBSITE_WORKSPACE);
+                    synchronized (TemplateUsageIndex.this) {
+                        for (String path : changedPaths) {
+                            refresh(session, path);
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (RepositoryException e) {
+            log.error("Error refreshing template usage index, reloading on next access", e);
+            loaded = false;
+        }
+    }
+
+    private void refresh(Session session, String path) throws RepositoryException {
+        if (!session.nodeExists(path)) {
+            // The node was removed or moved away, drop it and all pages below it
+            for (String pagePath : new ArrayList<>(templatesByPage.keySet())) {
+                if (pagePath.equals(path) || pagePath.startsWith(path + "/")) {
+                    unindexPage(pagePath);
+                }
+            }
+            return;
+        }
+
+        Node node = session.getNode(path);
+        if (NodeUtil.isNodeType(node, NodeTypes.Page.NAME)) {
+            if (!templatesByPage.containsKey(path)) {
+                // Added or moved in, possibly with subpages
+                indexPage(node);
+                collect(node);
+            } else {
+                indexPage(node);
+            }
+            return;
+        }
+
+        // A change inside a page's areas or components
+        Node page = node;
+        while (page.getDepth() > 0 && !NodeUtil.isNodeType(page, NodeTypes.Page.NAME)) {
+            page = page.getParent();
+        }
+        if (NodeUtil.isNodeType(page, NodeTypes.Page.NAME)) {
+            indexPage(page);
+        } else if (NodeUtil.isNodeType(node, NodeTypes.Folder.NAME)) {
+            collect(node);
+        }
+    }
+
+    /**
+     * Templates used by one page.
+     */
+    private static class PageTemplates {
+        private final String template;
+        private final Set<String> components = new LinkedHashSet<>();
+
+        PageTemplates(String template) {
+            this.template = template;
+        }
+    }
+}
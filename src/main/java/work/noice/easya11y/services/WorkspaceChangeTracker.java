@@ -0,0 +1,118 @@
+package work.noice.easya11y.services;
+
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import javax.jcr.RepositoryException;
+import javax.ws.rs.core.EntityTag;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks a change counter and last modification time per workspace through JCR observation.
+ * REST endpoints derive ETag and Last-Modified headers from it to answer conditional requests
+ * with 304 Not Modified without touching the repository.
+ */
+@Singleton
+public class WorkspaceChangeTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkspaceChangeTracker.class);
+    private static final String[] TRACKED_WORKSPACES = {"easya11y", "website"};
+    private static final long OBSERVATION_DELAY = 100;
+    private static final long OBSERVATION_MAX_DELAY = 1000;
+
+    // Distinguishes counters of different server runs, since counters restart at 0
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastModified = new ConcurrentHashMap<>();
+    private final List<WorkspaceEventListenerRegistration.Handle> listenerHandles = new ArrayList<>();
+
+    /**
+     * Start observing the tracked workspaces. Called on module start.
+     */
+    public synchronized void start() {
+        for (String workspace : TRACKED_WORKSPACES) {
+            try {
+                listenerHandles.add(WorkspaceEventListenerRegistration.observe(workspace, "/", events -> markChanged(workspace))
+                        .withSubNodes(true)
+                        .withDelay(OBSERVATION_DELAY, OBSERVATION_MAX_DELAY)
+                        .register());
+                versions.put(workspace, new AtomicLong());
+                lastModified.put(workspace, System.currentTimeMillis());
+            } catch (RepositoryException e) {
+                log.error("Could not observe workspace {}, conditional requests will not be answered for it", workspace, e);
+            }
+        }
+    }
+
+    /**
+     * Stop observing the tracked workspaces. Called on module stop.
+     */
+    public synchronized void stop() {
+        for (WorkspaceEventListenerRegistration.Handle handle : listenerHandles) {
+            try {
+                handle.unregister();
+            } catch (RepositoryException e) {
+                log.warn("Could not unregister workspace observation", e);
+            }
+        }
+        listenerHandles.clear();
+        versions.clear();
+        lastModified.clear();
+    }
+
+    /**
+     * Record a change right away, e.g. after a save, without waiting for the observation event.
+     *
+     * @param workspace The changed workspace
+     */
+    public void markChanged(String workspace) {
+        AtomicLong version = versions.get(workspace);
+        if (version != null) {
+            version.incrementAndGet();
+            lastModified.put(workspace, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Build a weak entity tag from the change counters of the given workspaces.
+     *
+     * @param workspaces The workspaces the response depends on
+     * @return The entity tag, or null if any of the workspaces is not tracked
+     */
+    public EntityTag getEntityTag(String... workspaces) {
+        StringBuilder tag = new StringBuilder(epoch);
+        for (String workspace : workspaces) {
+            AtomicLong version = versions.get(workspace);
+            if (version == null) {
+                return null;
+            }
+            tag.append('-').append(version.get());
+        }
+        return new EntityTag(tag.toString(), true);
+    }
+
+    /**
+     * Get the latest modification time of the given workspaces.
+     *
+     * @param workspaces The workspaces the response depends on
+     * @return The modification time, or null if any of the workspaces is not tracked
+     */
+    public Date getLastModified(String... workspaces) {
+        long latest = 0;
+        for (String workspace : workspaces) {
+            Long modified = lastModified.get(workspace);
+            if (modified == null) {
+                return null;
+            }
+            latest = Math.max(latest, modified);
+        }
+        return new Date(latest);
+    }
+}
@@ -0,0 +1,110 @@
+package work.noice.easya11y;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import work.noice.easya11y.services.BatchScanService;
+import work.noice.easya11y.services.ScanCoordinator;
+import work.noice.easya11y.services.ScanResultStore;
+
+import javax.inject.Inject;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the services behind server-side scans can be created from the components registered in the
+ * module descriptor, so e.g. a template rescan reaches the store that persists its results.
+ */
+public class ModuleDescriptorTest {
+
+    private static final String DESCRIPTOR = "/META-INF/magnolia/easya11y.xml";
+    private static final String MODULE_PACKAGE = "work.noice.easya11y.";
+    private static final String ENDPOINT_PACKAGE = "work.noice.easya11y.endpoints.";
+
+    @Test
+    public void templateRescanReachesResultStoreThroughRegisteredComponents() throws Exception {
+        Map<String, String> components = readComponents();
+
+        Set<Class<?>> reached = collectDependencies(BatchScanService.class, components);
+
+        assertTrue(reached.contains(ScanCoordinator.class));
+        assertTrue(reached.contains(ScanResultStore.class));
+    }
+
+    @Test
+    public void registeredComponentsDependOnlyOnRegisteredServices() throws Exception {
+        Map<String, String> components = readComponents();
+
+        for (String implementation : components.values()) {
+            collectDependencies(Class.forName(implementation), components);
+        }
+    }
+
+    /**
+     * Walk the injected constructor parameters of the module's own types, failing on a type that is not
+     * registered or is a REST endpoint, which cannot be created as a component.
+     */
+    private Set<Class<?>> collectDependencies(Class<?> root, Map<String, String> components) throws Exception {
+        Set<Class<?>> reached = new LinkedHashSet<>();
+        Deque<Class<?>> pending = new ArrayDeque<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Class<?> type = pending.poll();
+            if (!reached.add(type)) {
+                continue;
+            }
+            String implementation = components.get(type.getName());
+            assertNotNull(type.getName() + " is not registered in " + DESCRIPTOR, implementation);
+            for (Class<?> parameter : getInjectedParameters(Class.forName(implementation))) {
+                if (parameter.getName().startsWith(MODULE_PACKAGE)) {
+                    assertFalse(implementation + " depends on endpoint " + parameter.getName(),
+                            parameter.getName().startsWith(ENDPOINT_PACKAGE));
+                    pending.add(parameter);
+                }
+            }
+        }
+        return reached;
+    }
+
+    private Class<?>[] getInjectedParameters(Class<?> implementation) {
+        Constructor<?>[] constructors = implementation.getConstructors();
+        for (Constructor<?> constructor : constructors) {
+            if (constructor.isAnnotationPresent(Inject.class)) {
+                return constructor.getParameterTypes();
+            }
+        }
+        return constructors.length == 1 ? constructors[0].getParameterTypes() : new Class<?>[0];
+    }
+
+    private Map<String, String> readComponents() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document document;
+        try (InputStream descriptor = getClass().getResourceAsStream(DESCRIPTOR)) {
+            assertNotNull(DESCRIPTOR + " not found", descriptor);
+            document = builder.parse(descriptor);
+        }
+
+        Map<String, String> components = new HashMap<>();
+        NodeList nodes = document.getElementsByTagName("component");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            org.w3c.dom.Element component = (org.w3c.dom.Element) nodes.item(i);
+            components.put(component.getElementsByTagName("type").item(0).getTextContent().trim(),
+                    component.getElementsByTagName("implementation").item(0).getTextContent().trim());
+        }
+        return components;
+    }
+}
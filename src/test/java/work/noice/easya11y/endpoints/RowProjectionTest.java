@@ -0,0 +1,70 @@
+package work.noice.easya11y.endpoints;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RowProjectionTest {
+
+    private final List<Map<String, Object>> rows = Arrays.asList(
+            row("/home", 95.0, 1),
+            row("/about", 80.0, 4));
+
+    @Test
+    public void returnsRowsUnchangedWithoutParameters() {
+        RowProjection projection = RowProjection.parse(null, "");
+
+        assertTrue(projection.isIdentity());
+        assertSame(rows, projection.apply(rows));
+    }
+
+    @Test
+    public void keepsOnlyRequestedFields() {
+        RowProjection projection = RowProjection.parse(" pagePath, score ,,missing", RowProjection.FORMAT_ROWS);
+
+        assertFalse(projection.isIdentity());
+        List<?> projected = (List<?>) projection.apply(rows);
+        Map<?, ?> first = (Map<?, ?>) projected.get(0);
+        assertEquals(Arrays.asList("pagePath", "score"), Arrays.asList(first.keySet().toArray()));
+        assertEquals(95.0, first.get("score"));
+    }
+
+    @Test
+    public void encodesColumns() {
+        Map<?, ?> columns = (Map<?, ?>) RowProjection.parse("pagePath,violationCount", RowProjection.FORMAT_COLUMNAR)
+                .apply(rows);
+
+        assertEquals(2, columns.size());
+        assertEquals(Arrays.asList("/home", "/about"), columns.get("pagePath"));
+        assertEquals(Arrays.asList(1, 4), columns.get("violationCount"));
+    }
+
+    @Test
+    public void encodesAllColumnsWithoutFields() {
+        Map<?, ?> columns = (Map<?, ?>) RowProjection.parse(null, RowProjection.FORMAT_COLUMNAR).apply(rows);
+
+        assertEquals(Arrays.asList("pagePath", "score", "violationCount"), Arrays.asList(columns.keySet().toArray()));
+        assertEquals(Arrays.asList(95.0, 80.0), columns.get("score"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownFormat() {
+        RowProjection.parse(null, "csv");
+    }
+
+    private static Map<String, Object> row(String pagePath, double score, int violationCount) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("pagePath", pagePath);
+        row.put("score", score);
+        row.put("violationCount", violationCount);
+        return row;
+    }
+}
@@ -0,0 +1,68 @@
+package work.noice.easya11y.models;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScanDiffTest {
+
+    private static final String CONTRAST = ScanResultSummary.fingerprint("color-contrast", "#header > a");
+    private static final String ALT = ScanResultSummary.fingerprint("image-alt", "img.logo");
+    private static final String LABEL = ScanResultSummary.fingerprint("label", "#search");
+
+    @Test
+    public void fingerprintsAreStablePerRuleAndTarget() {
+        assertEquals(CONTRAST, ScanResultSummary.fingerprint("color-contrast", "#header > a"));
+        assertFalse(CONTRAST.equals(ScanResultSummary.fingerprint("color-contrast", "#footer > a")));
+        assertEquals("color-contrast", ScanResultSummary.getFingerprintRule(CONTRAST));
+    }
+
+    @Test
+    public void comparesFingerprintSets() {
+        ScanDiff diff = ScanDiff.between(set(CONTRAST, ALT), set(ALT, LABEL));
+
+        assertEquals(set(LABEL), diff.getNewViolations());
+        assertEquals(set(CONTRAST), diff.getFixedViolations());
+        assertEquals(set(ALT), diff.getUnchangedViolations());
+    }
+
+    @Test
+    public void treatsAllViolationsAsNewWithoutEarlierScan() {
+        ScanDiff diff = ScanDiff.between(null, set(CONTRAST, ALT));
+
+        assertEquals(set(CONTRAST, ALT), diff.getNewViolations());
+        assertTrue(diff.getFixedViolations().isEmpty());
+        assertTrue(diff.getUnchangedViolations().isEmpty());
+    }
+
+    @Test
+    public void mapsCountsAndOptionalFingerprints() {
+        ScanDiff diff = ScanDiff.between(set(CONTRAST), set(ALT, LABEL));
+
+        Map<String, Object> counts = diff.toMap(false);
+        assertEquals(2, counts.get("newCount"));
+        assertEquals(1, counts.get("fixedCount"));
+        assertEquals(0, counts.get("unchangedCount"));
+        assertFalse(counts.containsKey("new"));
+
+        Map<String, Object> full = diff.toMap(true);
+        List<?> fixed = (List<?>) full.get("fixed");
+        assertEquals(1, fixed.size());
+        assertEquals("color-contrast", ((Map<?, ?>) fixed.get(0)).get("ruleId"));
+        assertEquals(CONTRAST, ((Map<?, ?>) fixed.get(0)).get("fingerprint"));
+        assertEquals(Collections.emptyList(), full.get("unchanged"));
+    }
+
+    private static Set<String> set(String... fingerprints) {
+        return new LinkedHashSet<>(Arrays.asList(fingerprints));
+    }
+}
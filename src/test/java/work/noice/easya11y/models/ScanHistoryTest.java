@@ -0,0 +1,130 @@
+package work.noice.easya11y.models;
+
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.Value;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScanHistoryTest {
+
+    @Test
+    public void startsEmptyForNodeWithoutScan() throws Exception {
+        ScanHistory history = ScanHistory.fromNode(createNode(new HashMap<String, String[]>()));
+
+        assertTrue(history.getEntries().isEmpty());
+        assertNull(history.getLatest());
+    }
+
+    @Test
+    public void findsEntriesByScanAndRun() throws Exception {
+        ScanHistory history = ScanHistory.fromNode(createNode(new HashMap<String, String[]>()));
+        history.append(entry("scan-1", "run-1", 80));
+        history.append(entry("scan-2", null, 90));
+        history.append(entry("scan-3", "run-2", 70));
+
+        assertEquals("scan-3", history.getLatest().getScanId());
+        assertEquals("scan-2", history.getPrevious("scan-3").getScanId());
+        assertNull(history.getPrevious("scan-1"));
+        assertEquals("scan-1", history.findByRunId("run-1").getScanId());
+        assertNull(history.findByRunId("run-3"));
+    }
+
+    @Test
+    public void previousRunSkipsSingleScans() throws Exception {
+        ScanHistory history = ScanHistory.fromNode(createNode(new HashMap<String, String[]>()));
+        history.append(entry("scan-1", "run-1", 80));
+        history.append(entry("scan-2", null, 90));
+        history.append(entry("scan-3", "run-2", 70));
+
+        assertEquals("scan-1", history.findPreviousRun("run-2").getScanId());
+        assertEquals("scan-3", history.findPreviousRun("run-3").getScanId());
+    }
+
+    @Test
+    public void noPreviousRunWithoutEarlierRun() throws Exception {
+        ScanHistory history = ScanHistory.fromNode(createNode(new HashMap<String, String[]>()));
+        history.append(entry("scan-1", null, 80));
+        history.append(entry("scan-2", "run-1", 90));
+
+        assertNull(history.findPreviousRun("run-1"));
+    }
+
+    @Test
+    public void keepsOnlyLatestEntries() throws Exception {
+        ScanHistory history = ScanHistory.fromNode(createNode(new HashMap<String, String[]>()));
+        for (int i = 0; i < ScanHistory.MAX_ENTRIES + 5; i++) {
+            history.append(entry("scan-" + i, null, i));
+        }
+
+        assertEquals(ScanHistory.MAX_ENTRIES, history.getEntries().size());
+        assertEquals("scan-5", history.getEntries().get(0).getScanId());
+    }
+
+    @Test
+    public void roundTripsThroughNode() throws Exception {
+        Map<String, String[]> properties = new HashMap<>();
+        Node node = createNode(properties);
+        ScanHistory history = ScanHistory.fromNode(node);
+        history.append(entry("scan-1", "run-1", 80.5, "image-alt:0a1b2c3d4e5f", "label:0f1e2d3c4b5a"));
+        history.append(entry("scan-2", null, 92));
+        history.write(node);
+
+        ScanHistory read = ScanHistory.fromNode(node);
+        assertEquals(2, read.getEntries().size());
+        ScanHistory.Entry first = read.getEntries().get(0);
+        assertEquals("scan-1", first.getScanId());
+        assertEquals("run-1", first.getRunId());
+        assertEquals(80.5, first.getScore(), 0.0);
+        assertEquals(2, first.getFingerprints().size());
+        assertTrue(first.getFingerprints().contains("label:0f1e2d3c4b5a"));
+        assertNull(read.getEntries().get(1).getRunId());
+    }
+
+    private static ScanHistory.Entry entry(String scanId, String runId, double score, String... fingerprints) {
+        return new ScanHistory.Entry(scanId, runId, 1000L, score, fingerprints);
+    }
+
+    /**
+     * A node holding multi-value string properties in a map, enough for reading and writing the history.
+     */
+    private static Node createNode(final Map<String, String[]> properties) {
+        return (Node) Proxy.newProxyInstance(ScanHistoryTest.class.getClassLoader(), new Class<?>[]{Node.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "hasProperty":
+                            return properties.containsKey((String) args[0]);
+                        case "getProperty":
+                            return createProperty(properties.get((String) args[0]));
+                        case "setProperty":
+                            properties.put((String) args[0], (String[]) args[1]);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static Property createProperty(final String[] strings) {
+        return (Property) Proxy.newProxyInstance(ScanHistoryTest.class.getClassLoader(), new Class<?>[]{Property.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("getValues")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    Value[] values = new Value[strings.length];
+                    for (int i = 0; i < strings.length; i++) {
+                        final String string = strings[i];
+                        values[i] = (Value) Proxy.newProxyInstance(ScanHistoryTest.class.getClassLoader(),
+                                new Class<?>[]{Value.class}, (valueProxy, valueMethod, valueArgs) -> string);
+                    }
+                    return values;
+                });
+    }
+}
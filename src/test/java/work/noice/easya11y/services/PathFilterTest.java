@@ -0,0 +1,97 @@
+package work.noice.easya11y.services;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathFilterTest {
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    @Test
+    public void matchesAllPagesWithoutRules() {
+        PathFilter filter = PathFilter.compile(NONE, NONE);
+
+        assertTrue(filter.matches("/"));
+        assertTrue(filter.matches("/travel/about"));
+        assertEquals(Collections.singletonList("/"), filter.getIncludeRoots());
+    }
+
+    @Test
+    public void literalPathMatchesPageAndSubtree() {
+        PathFilter filter = PathFilter.compile(Collections.singletonList("/travel/"), NONE);
+
+        assertTrue(filter.matches("/travel"));
+        assertTrue(filter.matches("/travel/about/team"));
+        assertFalse(filter.matches("/traveling"));
+        assertFalse(filter.matches("/home"));
+    }
+
+    @Test
+    public void globsMatchWholePaths() {
+        PathFilter filter = PathFilter.compile(Arrays.asList("/travel/*/archive", "/news/**", "/y?ar"), NONE);
+
+        assertTrue(filter.matches("/travel/europe/archive"));
+        assertFalse(filter.matches("/travel/europe/north/archive"));
+        assertFalse(filter.matches("/travel/europe/archive/2020"));
+        assertTrue(filter.matches("/news/2020/january"));
+        assertFalse(filter.matches("/news"));
+        assertTrue(filter.matches("/year"));
+        assertFalse(filter.matches("/years"));
+    }
+
+    @Test
+    public void excludesWinOverIncludes() {
+        PathFilter filter = PathFilter.compile(Collections.singletonList("/travel"),
+                Arrays.asList("/travel/private", "/travel/**/draft-*"));
+
+        assertTrue(filter.matches("/travel/about"));
+        assertFalse(filter.matches("/travel/private"));
+        assertFalse(filter.matches("/travel/private/notes"));
+        assertFalse(filter.matches("/travel/europe/draft-paris"));
+        assertTrue(filter.matches("/travel/europe/paris"));
+    }
+
+    @Test
+    public void relativeLiteralMatchesPagesAndSubtreesAtAnyDepth() {
+        PathFilter filter = PathFilter.compile(NONE, Collections.singletonList("archive"));
+
+        assertFalse(filter.matches("/archive"));
+        assertFalse(filter.matches("/news/archive"));
+        assertFalse(filter.matches("/news/archive/2020"));
+        assertTrue(filter.matches("/news/archives"));
+        assertTrue(filter.matches("/news"));
+    }
+
+    @Test
+    public void relativeGlobMatchesOnlyThePages() {
+        PathFilter filter = PathFilter.compile(NONE, Collections.singletonList("archive*"));
+
+        assertFalse(filter.matches("/news/archive"));
+        assertFalse(filter.matches("/news/archive-2020"));
+        assertTrue(filter.matches("/news/archive/2020"));
+    }
+
+    @Test
+    public void includeRootsAreMinimal() {
+        PathFilter filter = PathFilter.compile(
+                Arrays.asList("/travel/europe", "/travel", "/news/*/archive", "/about/team"), NONE);
+
+        assertEquals(Arrays.asList("/news", "/travel", "/about/team"), filter.getIncludeRoots());
+    }
+
+    @Test
+    public void relativeIncludeQueriesWholeSite() {
+        PathFilter filter = PathFilter.compile(Arrays.asList("/travel", "archive"), NONE);
+
+        assertEquals(Collections.singletonList("/"), filter.getIncludeRoots());
+        assertTrue(filter.matches("/news/archive/2020"));
+        assertFalse(filter.matches("/news/2020"));
+    }
+}
@@ -0,0 +1,152 @@
+package work.noice.easya11y.services;
+
+import org.junit.Test;
+import work.noice.easya11y.models.ModuleConfiguration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScanAdmissionControllerTest {
+
+    @Test
+    public void admitsInteractiveScanIntoFreeSlotWithoutQueue() throws Exception {
+        ScanAdmissionController controller = createController(2, 0, 0);
+
+        ScanAdmissionController.Permit permit = controller.enqueue(ScanPriority.INTERACTIVE);
+
+        assertTrue(isAdmitted(permit));
+        assertEquals(0, permit.getQueuePosition());
+    }
+
+    @Test
+    public void rejectsInteractiveScanWhenNoSlotIsFreeAndQueueIsFull() throws Exception {
+        ScanAdmissionController controller = createController(1, 1, 0);
+        controller.enqueue(ScanPriority.INTERACTIVE);
+        ScanAdmissionController.Permit queued = controller.enqueue(ScanPriority.INTERACTIVE);
+        assertFalse(isAdmitted(queued));
+        assertEquals(1, queued.getQueuePosition());
+
+        try {
+            controller.enqueue(ScanPriority.INTERACTIVE);
+            fail("Expected the scan to be rejected");
+        } catch (ScanRejectedException e) {
+            assertEquals(1, e.getQueueLength());
+            assertTrue(e.getRetryAfterSeconds() >= 1);
+        }
+        assertEquals(1L, controller.getStatistics().get("rejectedCount"));
+    }
+
+    @Test
+    public void queuesBackgroundScansBeyondQueueLimit() throws Exception {
+        ScanAdmissionController controller = createController(1, 0, 0);
+        controller.enqueue(ScanPriority.SCHEDULED);
+
+        ScanAdmissionController.Permit event = controller.enqueue(ScanPriority.EVENT);
+        ScanAdmissionController.Permit scheduled = controller.enqueue(ScanPriority.SCHEDULED);
+
+        assertFalse(isAdmitted(event));
+        assertFalse(isAdmitted(scheduled));
+        assertEquals(2, controller.getStatistics().get("queued"));
+    }
+
+    @Test
+    public void admitsHigherLaneFirst() throws Exception {
+        ScanAdmissionController controller = createController(1, 10, 0);
+        ScanAdmissionController.Permit running = controller.enqueue(ScanPriority.SCHEDULED);
+        ScanAdmissionController.Permit scheduled = controller.enqueue(ScanPriority.SCHEDULED);
+        ScanAdmissionController.Permit interactive = controller.enqueue(ScanPriority.INTERACTIVE);
+
+        controller.release(running, false);
+
+        assertTrue(isAdmitted(interactive));
+        assertFalse(isAdmitted(scheduled));
+    }
+
+    @Test
+    public void admitsBypassedLaneAfterMaxBypass() throws Exception {
+        ScanAdmissionController controller = createController(1, 10, 0);
+        ScanAdmissionController.Permit running = controller.enqueue(ScanPriority.INTERACTIVE);
+        ScanAdmissionController.Permit scheduled = controller.enqueue(ScanPriority.SCHEDULED);
+
+        for (int i = 0; i < 4; i++) {
+            ScanAdmissionController.Permit next = controller.enqueue(ScanPriority.INTERACTIVE);
+            controller.release(running, false);
+            assertTrue(isAdmitted(next));
+            assertFalse(isAdmitted(scheduled));
+            running = next;
+        }
+        controller.enqueue(ScanPriority.INTERACTIVE);
+        controller.release(running, false);
+
+        assertTrue(isAdmitted(scheduled));
+    }
+
+    @Test
+    public void promotedScanOvertakesItsFormerLane() throws Exception {
+        ScanAdmissionController controller = createController(1, 10, 0);
+        ScanAdmissionController.Permit running = controller.enqueue(ScanPriority.SCHEDULED);
+        ScanAdmissionController.Permit first = controller.enqueue(ScanPriority.SCHEDULED);
+        ScanAdmissionController.Permit second = controller.enqueue(ScanPriority.SCHEDULED);
+
+        controller.promote(second, ScanPriority.INTERACTIVE);
+        controller.release(running, false);
+
+        assertTrue(isAdmitted(second));
+        assertFalse(isAdmitted(first));
+    }
+
+    @Test
+    public void adaptsLimitToPageLoadTime() throws Exception {
+        ScanAdmissionController controller = createController(4, 10, 1000);
+        assertEquals(1, controller.getStatistics().get("concurrencyLimit"));
+
+        ScanAdmissionController.Permit fast = controller.enqueue(ScanPriority.SCHEDULED);
+        ScanAdmissionController.Permit slow = controller.enqueue(ScanPriority.SCHEDULED);
+        fast.recordPageLoad(100);
+        controller.release(fast, false);
+        assertEquals(2, controller.getStatistics().get("concurrencyLimit"));
+        assertTrue(isAdmitted(slow));
+
+        slow.recordPageLoad(5000);
+        controller.release(slow, false);
+        assertEquals(1, controller.getStatistics().get("concurrencyLimit"));
+    }
+
+    @Test
+    public void lowersLimitOnFailedScan() throws Exception {
+        ScanAdmissionController controller = createController(4, 10, 1000);
+        ScanAdmissionController.Permit fast = controller.enqueue(ScanPriority.SCHEDULED);
+        ScanAdmissionController.Permit failing = controller.enqueue(ScanPriority.SCHEDULED);
+        fast.recordPageLoad(100);
+        controller.release(fast, false);
+        assertEquals(2, controller.getStatistics().get("concurrencyLimit"));
+
+        controller.release(failing, true);
+
+        assertEquals(1, controller.getStatistics().get("concurrencyLimit"));
+        assertEquals(1L, controller.getStatistics().get("failedCount"));
+    }
+
+    private static boolean isAdmitted(ScanAdmissionController.Permit permit) {
+        return permit.getStartedAt() > 0;
+    }
+
+    private static ScanAdmissionController createController(int maxConcurrent, int maxQueued, long targetPageLoadMillis) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("maxConcurrentScans", String.valueOf(maxConcurrent));
+        properties.put("maxQueuedScans", String.valueOf(maxQueued));
+        properties.put("targetPageLoadMillis", String.valueOf(targetPageLoadMillis));
+        final ModuleConfiguration configuration = ModuleConfiguration.fromProperties(properties);
+        return new ScanAdmissionController(new ConfigurationService() {
+            @Override
+            public ModuleConfiguration get() {
+                return configuration;
+            }
+        });
+    }
+}